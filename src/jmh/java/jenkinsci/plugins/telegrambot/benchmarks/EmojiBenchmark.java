@@ -0,0 +1,72 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import jenkinsci.plugins.telegrambot.utils.EmojiUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EmojiUtils#replaceEmojiPlaceholders(String)} on messages with none, a few and many placeholders,
+ * next to the replacement one placeholder after another it replaced.
+ * EmojiMatcherTest checks that both give the same output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmojiBenchmark {
+
+    @Param({"PLAIN", "TYPICAL", "LONG"})
+    public String message;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        switch (message) {
+            case "PLAIN":
+                text = Messages.PLAIN;
+                break;
+            case "TYPICAL":
+                text = Messages.TYPICAL;
+                break;
+            default:
+                text = Messages.LONG;
+                break;
+        }
+    }
+
+    @Benchmark
+    public String replaceEmojiPlaceholders() {
+        return EmojiUtils.replaceEmojiPlaceholders(text);
+    }
+
+    @Benchmark
+    public String legacyReplaceEmojiPlaceholders() {
+        return legacyReplace(text);
+    }
+
+    /**
+     * The replacement as it was before the single-scan engine
+     */
+    static String legacyReplace(String text) {
+        String result = text;
+        for (Map.Entry<String, String> entry : EmojiUtils.getBuiltInPlaceholders().entrySet()) {
+            result = result.replace(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+}
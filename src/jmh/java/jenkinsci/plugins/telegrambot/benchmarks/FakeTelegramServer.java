@@ -0,0 +1,286 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Telegram Bot API, for load and integration testing.
+ * <p>
+ * Serves {@code /bot<token>/<method>} for getUpdates, sendMessage, sendDocument, sendPhoto,
+ * sendMediaGroup and editMessageText, and answers any other method with {@code true}.
+ * Every call can be delayed, and a share of the send calls can be answered with 429 (with retry_after),
+ * 403 or 500 errors, to see how the plugin copes with them.
+ * <p>
+ * Point the plugin at it by setting the Bot API URL in the global configuration to {@link #getBaseUrl()}.
+ */
+public class FakeTelegramServer implements AutoCloseable {
+    private static final Pattern CHAT_ID_JSON = Pattern.compile("\"chat_id\"\\s*:\\s*\"?(-?\\d+)");
+    private static final Pattern CHAT_ID_MULTIPART = Pattern.compile("name=\"chat_id\"\\r?\\n(?:[^\\r\\n]+\\r?\\n)*\\r?\\n(-?\\d+)");
+    private static final Pattern CHAT_ID_FORM = Pattern.compile("(?:^|&)chat_id=(-?\\d+)");
+    private static final Pattern TIMEOUT = Pattern.compile("\"timeout\"\\s*:\\s*(\\d+)");
+    private static final Pattern MEDIA_COUNT = Pattern.compile("\"media\"\\s*:\\s*\"attach://");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BlockingQueue<String> updates = new LinkedBlockingQueue<>();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private final AtomicInteger updateIds = new AtomicInteger();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double tooManyRequestsRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile double forbiddenRate;
+    private volatile double serverErrorRate;
+
+    /**
+     * @param port  port to listen on, 0 for any free one
+     */
+    public FakeTelegramServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Fake Telegram API");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Delay every answer by the latency plus a random share of the jitter
+     */
+    public FakeTelegramServer setLatency(long latencyMillis, long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        return this;
+    }
+
+    /**
+     * Share of the send calls answered with 429 Too Many Requests and the given retry_after
+     */
+    public FakeTelegramServer setTooManyRequests(double rate, int retryAfterSeconds) {
+        this.tooManyRequestsRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Share of the send calls answered with 403 Forbidden, as for a user who blocked the bot
+     */
+    public FakeTelegramServer setForbiddenRate(double rate) {
+        this.forbiddenRate = rate;
+        return this;
+    }
+
+    /**
+     * Share of the send calls answered with 500 Internal Server Error
+     */
+    public FakeTelegramServer setServerErrorRate(double rate) {
+        this.serverErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * Queue a text message from the given chat, handed out by the next getUpdates call
+     */
+    public void pushUpdate(long chatId, String text) {
+        final int updateId = updateIds.incrementAndGet();
+        updates.add(String.format("{\"update_id\":%d,\"message\":%s}", updateId, message(chatId, text)));
+    }
+
+    /**
+     * Number of calls of the given method, answered successfully or not
+     */
+    public long getCalls(String method) {
+        final LongAdder adder = calls.get(method);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final String path = exchange.getRequestURI().getPath();
+            final String method = path.substring(path.lastIndexOf('/') + 1);
+            final String body = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+            calls.computeIfAbsent(method, name -> new LongAdder()).increment();
+
+            if ("getUpdates".equals(method)) {
+                respond(exchange, 200, getUpdates(body));
+                return;
+            }
+
+            sleep(latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis) : 0));
+
+            if (method.startsWith("send") || "editMessageText".equals(method)) {
+                final int errorCode = randomErrorCode();
+                if (errorCode != 0) {
+                    respond(exchange, errorCode, errorJson(errorCode));
+                    return;
+                }
+            }
+
+            final long chatId = chatId(body);
+            switch (method) {
+                case "sendMessage":
+                case "editMessageText":
+                    respond(exchange, 200, ok(message(chatId, "ok")));
+                    break;
+                case "sendDocument":
+                    respond(exchange, 200, ok(withFile(chatId, "document", fileJson())));
+                    break;
+                case "sendPhoto":
+                    respond(exchange, 200, ok(withFile(chatId, "photo", "[" + fileJson() + "]")));
+                    break;
+                case "sendMediaGroup":
+                    respond(exchange, 200, ok(mediaGroup(chatId, body)));
+                    break;
+                default:
+                    respond(exchange, 200, ok("true"));
+                    break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 500, errorJson(500));
+        }
+    }
+
+    /**
+     * Hand out the queued updates, or hold the request for the long polling timeout if there are none
+     */
+    private String getUpdates(String body) throws InterruptedException {
+        final Matcher timeout = TIMEOUT.matcher(body);
+        final long timeoutSeconds = timeout.find() ? Long.parseLong(timeout.group(1)) : 0;
+
+        final StringBuilder result = new StringBuilder("[");
+        String update = updates.poll(timeoutSeconds, TimeUnit.SECONDS);
+        while (update != null) {
+            if (result.length() > 1) result.append(',');
+            result.append(update);
+            update = updates.poll();
+        }
+        return ok(result.append(']').toString());
+    }
+
+    /**
+     * HTTP status of a randomly chosen error, 0 for none
+     */
+    private int randomErrorCode() {
+        final double random = ThreadLocalRandom.current().nextDouble();
+        if (random < tooManyRequestsRate) {
+            return 429;
+        }
+        if (random < tooManyRequestsRate + forbiddenRate) {
+            return 403;
+        }
+        if (random < tooManyRequestsRate + forbiddenRate + serverErrorRate) {
+            return 500;
+        }
+        return 0;
+    }
+
+    private String errorJson(int errorCode) {
+        switch (errorCode) {
+            case 429:
+                return String.format("{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after %d\","
+                        + "\"parameters\":{\"retry_after\":%d}}", retryAfterSeconds, retryAfterSeconds);
+            case 403:
+                return error(403, "Forbidden: bot was blocked by the user");
+            default:
+                return error(errorCode, "Internal Server Error");
+        }
+    }
+
+    private String message(long chatId, String text) {
+        return String.format("{\"message_id\":%d,\"date\":%d,\"chat\":{\"id\":%d,\"type\":\"%s\"},\"text\":\"%s\"}",
+                messageIds.incrementAndGet(), System.currentTimeMillis() / 1000, chatId,
+                chatId < 0 ? "group" : "private", text.replace("\\", "\\\\").replace("\"", "\\\""));
+    }
+
+    private String withFile(long chatId, String field, String file) {
+        return String.format("{\"message_id\":%d,\"date\":%d,\"chat\":{\"id\":%d,\"type\":\"%s\"},\"%s\":%s}",
+                messageIds.incrementAndGet(), System.currentTimeMillis() / 1000, chatId,
+                chatId < 0 ? "group" : "private", field, file);
+    }
+
+    private String mediaGroup(long chatId, String body) {
+        final Matcher media = MEDIA_COUNT.matcher(body);
+        int count = 0;
+        while (media.find()) count++;
+
+        final StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < Math.max(1, count); i++) {
+            if (i > 0) result.append(',');
+            result.append(withFile(chatId, "document", fileJson()));
+        }
+        return result.append(']').toString();
+    }
+
+    private String fileJson() {
+        final int id = messageIds.incrementAndGet();
+        return String.format("{\"file_id\":\"fake-file-%d\",\"file_unique_id\":\"fake-unique-%d\",\"file_size\":1024,"
+                + "\"width\":1,\"height\":1}", id, id);
+    }
+
+    private static long chatId(String body) {
+        for (Pattern pattern : new Pattern[]{CHAT_ID_JSON, CHAT_ID_MULTIPART, CHAT_ID_FORM}) {
+            final Matcher matcher = pattern.matcher(body);
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+        return 0;
+    }
+
+    private static String ok(String result) {
+        return "{\"ok\":true,\"result\":" + result + "}";
+    }
+
+    private static String error(int code, String description) {
+        return String.format("{\"ok\":false,\"error_code\":%d,\"description\":\"%s\"}", code, description);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+}
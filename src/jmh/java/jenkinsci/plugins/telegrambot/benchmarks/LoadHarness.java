@@ -0,0 +1,161 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import hudson.model.TaskListener;
+import jenkins.model.GlobalConfiguration;
+import jenkinsci.plugins.telegrambot.TelegramBotGlobalConfiguration;
+import jenkinsci.plugins.telegrambot.telegram.TelegramBot;
+import jenkinsci.plugins.telegrambot.telegram.TelegramBotRunner;
+import jenkinsci.plugins.telegrambot.telegram.delivery.CircuitBreaker;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeduplicationCache;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryMetrics;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryQueue;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryResult;
+import jenkinsci.plugins.telegrambot.telegram.delivery.LatencyHistogram;
+import jenkinsci.plugins.telegrambot.users.Subscribers;
+import jenkinsci.plugins.telegrambot.users.UserApprover;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates N concurrent builds, each notifying M subscribers, against a {@link FakeTelegramServer},
+ * and reports the end-to-end throughput and latency.
+ * <p>
+ * The notifications go through the bot a Jenkins started by {@link JenkinsRule} runs, configured like a user
+ * would: the Bot API URL points at the fake server and the builds fan out to the subscribers.
+ * So the delivery queue, the rate limiter, the circuit breaker, the retries honouring retry_after and the
+ * deduplication all take part. The rate limiter keeps to the Telegram limits, so expect about 30 messages/s.
+ * <p>
+ * Settings are read from system properties:
+ * {@code load.builds}, {@code load.subscribers}, {@code load.messages} (per build),
+ * {@code load.repeats} (times every message is sent again, suppressed as a duplicate),
+ * {@code load.workers}, {@code load.latency} (ms per API call), {@code load.errorRate} (share of 500 answers),
+ * {@code load.tooManyRequestsRate} (share of 429 answers) and {@code load.retryAfter} (their retry_after, s).
+ */
+public class LoadHarness {
+    private static final String BOT_TOKEN = "123:load";
+    private static final String BOT_NAME = "load";
+    private static final int DEDUPLICATION_WINDOW_SECONDS = 600;
+
+    public static void main(String[] args) throws Throwable {
+        final JenkinsRule jenkins = new JenkinsRule();
+        // The rate limiter makes a large load take longer than a test may
+        jenkins.timeout = 0;
+        jenkins.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                run();
+            }
+        }, Description.createTestDescription(LoadHarness.class, "load")).evaluate();
+        System.exit(0);
+    }
+
+    private static void run() throws Exception {
+        final int builds = Integer.getInteger("load.builds", 10);
+        final int subscribers = Integer.getInteger("load.subscribers", 20);
+        final int messages = Integer.getInteger("load.messages", 3);
+        final int repeats = Integer.getInteger("load.repeats", 1);
+        final int workers = Integer.getInteger("load.workers", DeliveryQueue.DEFAULT_WORKERS);
+        final long latency = Long.getLong("load.latency", 20);
+        final double errorRate = Double.parseDouble(System.getProperty("load.errorRate", "0"));
+        final double tooManyRequestsRate = Double.parseDouble(System.getProperty("load.tooManyRequestsRate", "0"));
+        final int retryAfter = Integer.getInteger("load.retryAfter", 1);
+
+        try (FakeTelegramServer server = new FakeTelegramServer(0)) {
+            server.setLatency(latency, latency / 2)
+                    .setServerErrorRate(errorRate)
+                    .setTooManyRequests(tooManyRequestsRate, retryAfter);
+
+            final TelegramBot bot = startBot(server, workers);
+            for (long chatId = 1; chatId <= subscribers; chatId++) {
+                Subscribers.getInstance().subscribe("Subscriber " + chatId, chatId);
+            }
+
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final List<List<CompletableFuture<DeliveryResult>>> buildResults = new ArrayList<>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<>();
+
+            for (int build = 0; build < builds; build++) {
+                final String text = "Build #" + build + " step ";
+                final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>();
+                buildResults.add(results);
+
+                final Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < messages; i++) {
+                            final long sentAt = System.nanoTime();
+                            final CompletableFuture<DeliveryResult> result =
+                                    bot.sendMessage(text + i, null, null, TaskListener.NULL);
+                            result.thenRun(() -> latencies.record(
+                                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt)));
+                            results.add(result);
+
+                            // A step sending the same text again, e.g. a retried stage
+                            for (int r = 0; r < repeats; r++) {
+                                results.add(bot.sendMessage(text + i, null, null, TaskListener.NULL));
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, "Build #" + build);
+                thread.start();
+                threads.add(thread);
+            }
+
+            final long started = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>();
+            buildResults.forEach(results::addAll);
+            final DeliveryResult result = DeliveryResult.allOf(results).get();
+            final double seconds = (System.nanoTime() - started) / 1e9;
+
+            System.out.printf("%d builds x %d subscribers x %d messages, %d repeats, %d workers, %d ms API latency%n",
+                    builds, subscribers, messages, repeats, workers, latency);
+            System.out.printf("Result: %s in %.2f s, %.1f messages/s%n", result, seconds, result.getSent() / seconds);
+            System.out.printf("End-to-end notification latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                    latencies.getQuantile(0.5) / 1e3, latencies.getQuantile(0.9) / 1e3,
+                    latencies.getQuantile(0.99) / 1e3, latencies.getQuantile(1) / 1e3);
+            System.out.printf("sendMessage calls: %d, suppressed duplicates: %d%n",
+                    server.getCalls("sendMessage"), DeduplicationCache.getInstance().getSuppressedCount());
+            System.out.printf("Circuit breaker: %s%n", CircuitBreaker.getInstance().getStatus());
+            System.out.printf("Delivery metrics: %s%n", DeliveryMetrics.getInstance().toJson().toString(2));
+        }
+    }
+
+    /**
+     * Configure the plugin like a user would and wait for the bot to be running
+     */
+    private static TelegramBot startBot(FakeTelegramServer server, int workers) throws InterruptedException {
+        final TelegramBotGlobalConfiguration config =
+                GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class);
+        config.setShouldLogToConsole(false);
+        config.setApprovalType(UserApprover.ApprovalType.ALL);
+        config.setQueueCapacity(10_000);
+        config.setQueueWorkers(workers);
+        config.setDeduplicationWindowSeconds(DEDUPLICATION_WINDOW_SECONDS);
+        config.setApiBaseUrl(server.getBaseUrl());
+        config.setBotName(BOT_NAME);
+        config.setBotToken(BOT_TOKEN);
+
+        TelegramBot bot;
+        while ((bot = TelegramBotRunner.getInstance().getBot()) == null) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return bot;
+    }
+}
@@ -0,0 +1,36 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+/**
+ * Sample notification texts shared by the benchmarks
+ */
+final class Messages {
+    /**
+     * Plain text without any placeholder
+     */
+    static final String PLAIN = "Build #1234 of my-project finished in 5 min 12 sec";
+
+    /**
+     * A typical notification after the token macros were expanded
+     */
+    static final String TYPICAL = ":jenkins: *my-project* #1234\n"
+            + ":success: Build finished in 5 min 12 sec\n"
+            + ":branch: `feature/fast-notifications` :commit: `4f2c9e1`\n"
+            + ":chart: Tests: 1532 passed, 0 failed :tada:";
+
+    /**
+     * A long message with a log excerpt, split into several Telegram messages
+     */
+    static final String LONG;
+
+    static {
+        final StringBuilder builder = new StringBuilder(TYPICAL).append("\n```\n");
+        for (int i = 0; builder.length() < 20_000; i++) {
+            builder.append("[INFO] :gear: Compiling module-").append(i)
+                    .append(" ... done in ").append(i % 97).append(" ms\n");
+        }
+        LONG = builder.append("```\n:failure: Build failed").toString();
+    }
+
+    private Messages() {
+    }
+}
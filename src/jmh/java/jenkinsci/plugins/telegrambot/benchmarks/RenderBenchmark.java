@@ -0,0 +1,81 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import jenkinsci.plugins.telegrambot.utils.EmojiUtils;
+import jenkinsci.plugins.telegrambot.utils.MessageSplitter;
+import jenkinsci.plugins.telegrambot.utils.MessageTemplate;
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code TelegramBot} does with a message once the token macros are expanded:
+ * replace the emoji placeholders and split it into Telegram messages, escape macro values
+ * and check the result can be parsed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final String TEMPLATE = ":jenkins: *${JOB_NAME}* #${BUILD_NUMBER}\n"
+            + ":success: Build finished in ${BUILD_DURATION}\n"
+            + ":branch: `${GIT_BRANCH}` :commit: `${GIT_REVISION, length=7}`\n"
+            + ":chart: ${TEST_COUNTS, var=\"total\"} tests :tada:";
+
+    @Param({"TYPICAL", "LONG"})
+    public String message;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = "LONG".equals(message) ? Messages.LONG : Messages.TYPICAL;
+    }
+
+    @Benchmark
+    public List<String> render() {
+        return MessageSplitter.split(EmojiUtils.replaceEmojiPlaceholders(text), MessageSplitter.MESSAGE_LIMIT);
+    }
+
+    /**
+     * A step's message through the compiled template, with every macro evaluating to a constant
+     */
+    @Benchmark
+    public String renderTemplate() throws IOException, InterruptedException {
+        return MessageTemplate.of(TEMPLATE).render(macro -> "42");
+    }
+
+    /**
+     * Escaping macro values for MarkdownV2, most of which need no escaping
+     */
+    @Benchmark
+    public String renderTemplateEscaped() throws IOException, InterruptedException {
+        return MessageTemplate.of(TEMPLATE).render(macro -> ParseMode.MARKDOWN_V2.escape("feature_branch-42"));
+    }
+
+    @Benchmark
+    public String escapePlain() {
+        return ParseMode.MARKDOWN_V2.escape(Messages.PLAIN);
+    }
+
+    @Benchmark
+    public boolean validateMarkdown() {
+        return ParseMode.MARKDOWN.isValid(text);
+    }
+}
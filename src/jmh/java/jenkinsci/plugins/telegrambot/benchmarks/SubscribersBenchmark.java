@@ -0,0 +1,66 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import jenkinsci.plugins.telegrambot.users.Subscribers;
+import jenkinsci.plugins.telegrambot.users.User;
+import jenkinsci.plugins.telegrambot.users.UserApprover;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the subscribers, as done for every notification and every bot command
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscribersBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int users;
+
+    private Subscribers subscribers;
+    private long lastId;
+
+    @Setup
+    public void setUp() {
+        final Set<User> set = new HashSet<>();
+        for (int i = 0; i < users; i++) {
+            // Every other user is approved
+            set.add(new User("user" + i, (long) i, i % 2 == 0));
+        }
+
+        subscribers = Subscribers.getInstance();
+        subscribers.setUsers(set);
+        lastId = users - 1;
+    }
+
+    @Benchmark
+    public Set<User> getApprovedUsersManual() {
+        return subscribers.getApprovedUsers(UserApprover.ApprovalType.MANUAL);
+    }
+
+    @Benchmark
+    public Set<User> getApprovedUsersAll() {
+        return subscribers.getApprovedUsers(UserApprover.ApprovalType.ALL);
+    }
+
+    @Benchmark
+    public boolean isSubscribed() {
+        return subscribers.isSubscribed(lastId);
+    }
+}
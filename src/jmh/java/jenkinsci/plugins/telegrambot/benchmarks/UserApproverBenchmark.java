@@ -0,0 +1,67 @@
+package jenkinsci.plugins.telegrambot.benchmarks;
+
+import jenkinsci.plugins.telegrambot.users.User;
+import jenkinsci.plugins.telegrambot.users.UserApprover;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserApprover#approve(JSONObject)} with the form the global configuration page submits.
+ * The form keeps every approval as it is, so no approval message is sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserApproverBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int users;
+
+    private UserApprover approver;
+    private JSONObject formData;
+
+    @Setup
+    public void setUp() {
+        final Set<User> set = new HashSet<>();
+        final JSONArray formUsers = new JSONArray();
+        for (int i = 0; i < users; i++) {
+            final boolean approved = i % 2 == 0;
+            set.add(new User("user" + i, (long) i, approved));
+
+            final JSONObject formUser = new JSONObject();
+            formUser.put(String.valueOf(i), approved);
+            formUsers.add(formUser);
+        }
+
+        final JSONObject approval = new JSONObject();
+        approval.put("value", UserApprover.ApprovalType.MANUAL.name());
+        approval.put("users", formUsers);
+
+        formData = new JSONObject();
+        formData.put("approval", approval);
+        approver = new UserApprover(set);
+    }
+
+    @Benchmark
+    public UserApprover.ApprovalType approve() {
+        return approver.approve(formData);
+    }
+}
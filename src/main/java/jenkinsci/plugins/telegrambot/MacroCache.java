@@ -0,0 +1,148 @@
+package jenkinsci.plugins.telegrambot;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkinsci.plugins.telegrambot.utils.MessageTemplate;
+import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token macro values of a running build, so the Telegram steps of a build evaluate every macro only once.
+ * <p>
+ * Attached to the run as an invisible action. The values themselves are transient and the action
+ * is removed once the run completes. Macros which keep changing while the build runs are not cached,
+ * and the build log macros only for as long as the log doesn't grow. Neither are environment variables,
+ * nor the macros reading them or the workspace, since a {@code withEnv} block, a stage or a checkout
+ * changes them between two steps.
+ */
+public class MacroCache extends InvisibleAction {
+    private static final int MAX_ENTRIES = 100;
+
+    private static final Set<String> VOLATILE_MACROS = Set.of(
+            "BUILD_DURATION", "BUILD_STATUS", "TEST_COUNTS", "FAILED_TESTS",
+            "ENV", "GIT_BRANCH", "GIT_REVISION", "GIT_COMMIT", "FILE", "PROPFILE", "XML", "JSON");
+    private static final String LOG_MACRO_PREFIX = "BUILD_LOG";
+
+    private transient Map<String, String> values;
+
+    /**
+     * The cache of the run, attached on first use
+     */
+    public static MacroCache of(Run<?, ?> run) {
+        MacroCache cache = run.getAction(MacroCache.class);
+        if (cache == null) {
+            synchronized (MacroCache.class) {
+                cache = run.getAction(MacroCache.class);
+                if (cache == null) {
+                    cache = new MacroCache();
+                    run.addAction(cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * The value of the macro, evaluated by the expander unless it was evaluated for the run before
+     */
+    public String expand(String macro, Run<?, ?> run, FilePath workspace, MessageTemplate.Expander expander)
+            throws IOException, InterruptedException {
+
+        final String key = key(macro, run, workspace);
+        if (key == null) {
+            return expander.expand(macro);
+        }
+
+        final Map<String, String> values = getValues();
+        String value = values.get(key);
+        if (value == null) {
+            value = expander.expand(macro);
+            if (values.size() < MAX_ENTRIES) {
+                values.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    private synchronized Map<String, String> getValues() {
+        if (values == null) {
+            values = new ConcurrentHashMap<>();
+        }
+        return values;
+    }
+
+    /**
+     * Cache key of the macro, null if its value must not be cached
+     */
+    private static String key(String macro, Run<?, ?> run, FilePath workspace) {
+        final String name = macroName(macro);
+        if (name == null || VOLATILE_MACROS.contains(name) || !isTokenMacro(name)) {
+            return null;
+        }
+
+        final String where = workspace != null ? workspace.getRemote() : "";
+        if (name.startsWith(LOG_MACRO_PREFIX)) {
+            // Valid until more is written to the log
+            @SuppressWarnings("deprecation")
+            final File log = run.getLogFile();
+            return macro + '\u0000' + where + '\u0000' + log.length();
+        }
+        return macro + '\u0000' + where;
+    }
+
+    /**
+     * Whether a token macro is registered for the name; any other name is an environment variable
+     */
+    private static boolean isTokenMacro(String name) {
+        for (TokenMacro tokenMacro : TokenMacro.all()) {
+            if (tokenMacro.acceptsMacroName(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Name of the macro of a reference like {@code ${NAME, arg="value"}} or {@code $NAME},
+     * null for an escaped reference
+     */
+    static String macroName(String macro) {
+        if (macro.length() < 2 || macro.charAt(1) == '$') {
+            return null;
+        }
+
+        int start = macro.charAt(1) == '{' ? 2 : 1;
+        while (start < macro.length() && Character.isWhitespace(macro.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+        while (end < macro.length() && (Character.isLetterOrDigit(macro.charAt(end)) || macro.charAt(end) == '_')) {
+            end++;
+        }
+        return end > start ? macro.substring(start, end) : null;
+    }
+
+    /**
+     * Drops the cache of a run once it completed
+     */
+    @Extension
+    public static class Eviction extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            final MacroCache cache = run.getAction(MacroCache.class);
+            if (cache != null) {
+                run.removeAction(cache);
+            }
+        }
+    }
+}
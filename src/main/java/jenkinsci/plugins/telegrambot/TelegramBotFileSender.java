@@ -14,11 +14,12 @@ import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class TelegramBotFileSender extends Builder implements SimpleBuildStep {
 
     /**
-     * The file path to send (supports Jenkins FilePath patterns)
+     * The file path to send, or an Ant-style pattern like {@code screenshots/**}{@code /*.png} matching several files
      */
     private final String filePath;
 
@@ -67,6 +68,18 @@ public class TelegramBotFileSender extends Builder implements SimpleBuildStep {
             return;
         }
 
+        if (isPattern(filePath)) {
+            final FilePath[] matches = workspace.list(filePath);
+            if (matches.length == 0) {
+                taskListener.getLogger().println("TelegramBot File Sender: No files match: " + filePath);
+                return;
+            }
+
+            TelegramBotRunner.getInstance().getBot()
+                    .telegramSendFiles(Arrays.asList(matches), caption, run, taskListener);
+            return;
+        }
+
         // Resolve file path relative to workspace
         FilePath targetFile = workspace.child(filePath);
         
@@ -84,4 +97,11 @@ public class TelegramBotFileSender extends Builder implements SimpleBuildStep {
         TelegramBotRunner.getInstance().getBot()
                 .telegramSendFile(targetFile, caption, run, taskListener);
     }
+
+    /**
+     * Only wildcards make a pattern; a comma may well be part of a file name
+     */
+    private static boolean isPattern(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0;
+    }
 }
\ No newline at end of file
@@ -5,10 +5,20 @@ import hudson.model.AbstractProject;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
 import jenkins.model.GlobalConfiguration;
+import hudson.util.ListBoxModel;
+import jenkinsci.plugins.telegrambot.telegram.FileSlice;
 import jenkinsci.plugins.telegrambot.telegram.TelegramBotRunner;
+import jenkinsci.plugins.telegrambot.telegram.TelegramHttpClient;
+import jenkinsci.plugins.telegrambot.telegram.delivery.BacklogPolicy;
+import jenkinsci.plugins.telegrambot.telegram.delivery.CircuitBreaker;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeduplicationCache;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryQueue;
+import jenkinsci.plugins.telegrambot.telegram.delivery.OverflowPolicy;
 import jenkinsci.plugins.telegrambot.users.Subscribers;
 import jenkinsci.plugins.telegrambot.users.User;
 import jenkinsci.plugins.telegrambot.users.UserApprover;
+import jenkinsci.plugins.telegrambot.utils.EmojiRegistry;
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
@@ -16,6 +26,8 @@ import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class if user for the storing global plugin configuration.
@@ -23,6 +35,8 @@ import java.util.*;
 @Extension
 public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
 
+    private static final Logger LOG = Logger.getLogger(TelegramBotGlobalConfiguration.class.getName());
+
     final static String PLUGIN_DISPLAY_NAME = "TelegramBot";
     private final Map<String, String> botStrings;
 
@@ -32,6 +46,27 @@ public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
     private UserApprover.ApprovalType approvalType;
     private Set<User> users;
 
+    private int queueCapacity = DeliveryQueue.DEFAULT_CAPACITY;
+    private int queueWorkers = DeliveryQueue.DEFAULT_WORKERS;
+    private OverflowPolicy queueOverflowPolicy;
+    private int coalesceWindowMillis;
+    private int deduplicationWindowSeconds;
+    private BacklogPolicy backlogPolicy;
+
+    private int httpMaxIdleConnections = TelegramHttpClient.DEFAULT_MAX_IDLE_CONNECTIONS;
+    private int httpKeepAliveSeconds = TelegramHttpClient.DEFAULT_KEEP_ALIVE_SECONDS;
+    private int httpConnectTimeoutSeconds = TelegramHttpClient.DEFAULT_CONNECT_TIMEOUT_SECONDS;
+    private int httpReadTimeoutSeconds = TelegramHttpClient.DEFAULT_READ_TIMEOUT_SECONDS;
+    private int httpMaxRequestsPerHost = TelegramHttpClient.DEFAULT_MAX_REQUESTS_PER_HOST;
+    private Boolean http2Enabled = Boolean.TRUE;
+    private String proxyHost;
+    private int proxyPort;
+    private String apiBaseUrl;
+    private String customEmojis;
+    private ParseMode parseMode;
+    private boolean uploadFromAgent;
+    private int maxUploadMegabytes = FileSlice.DEFAULT_MAX_UPLOAD_MEGABYTES;
+
     /**
      * Called when Jenkins is starting and it's config is loading
      */
@@ -58,6 +93,9 @@ public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
         
         // Load saved configuration
         load();
+
+        applyDeliverySettings();
+        applyEmojiSettings();
         
         // Auto-start bot if configuration exists (fix for issue #2)
         startBotIfConfigured();
@@ -75,7 +113,26 @@ public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
                 Subscribers.getInstance().setUsers(users);
                 Subscribers.getInstance().addObserver(this::onSubscribersUpdate);
             }
-            TelegramBotRunner.getInstance().runBot(botName, plainToken);
+            TelegramBotRunner.getInstance().runBot(botName, plainToken, getApiBaseUrl());
+        }
+    }
+
+    private void applyDeliverySettings() {
+        DeliveryQueue deliveryQueue = DeliveryQueue.getInstance();
+        deliveryQueue.configure(getQueueCapacity(), getQueueWorkers(), getQueueOverflowPolicy());
+        deliveryQueue.setCoalesceWindowMillis(getCoalesceWindowMillis());
+        deliveryQueue.setBacklogPolicy(getBacklogPolicy());
+        DeduplicationCache.getInstance().setWindowSeconds(getDeduplicationWindowSeconds());
+        TelegramHttpClient.getInstance().configure(getHttpMaxIdleConnections(), getHttpKeepAliveSeconds(),
+                getHttpConnectTimeoutSeconds(), getHttpReadTimeoutSeconds(), getHttpMaxRequestsPerHost(),
+                isHttp2Enabled(), getProxyHost(), getProxyPort());
+    }
+
+    private void applyEmojiSettings() {
+        try {
+            EmojiRegistry.getInstance().setCustomPlaceholders(EmojiRegistry.parse(customEmojis));
+        } catch (IllegalArgumentException e) {
+            LOG.log(Level.WARNING, "Custom emoji placeholders ignored: " + e.getMessage());
         }
     }
 
@@ -88,6 +145,92 @@ public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
         return value.length() == 0 ? FormValidation.error("Please set a message") : FormValidation.ok();
     }
 
+    public FormValidation doCheckQueueCapacity(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckQueueWorkers(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckCoalesceWindowMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckDeduplicationWindowSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckHttpMaxIdleConnections(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckHttpKeepAliveSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckHttpConnectTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckHttpReadTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckHttpMaxRequestsPerHost(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxUploadMegabytes(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckProxyPort(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckApiBaseUrl(@QueryParameter String value) {
+        try {
+            TelegramHttpClient.toTelegramUrl(value);
+            return FormValidation.ok();
+        } catch (IllegalArgumentException e) {
+            return FormValidation.error("Please set an http(s) URL like http://localhost:8081, or leave it empty");
+        }
+    }
+
+    public FormValidation doCheckCustomEmojis(@QueryParameter String value) {
+        try {
+            EmojiRegistry.parse(value);
+            return FormValidation.ok();
+        } catch (IllegalArgumentException e) {
+            return FormValidation.error(e.getMessage());
+        }
+    }
+
+    public ListBoxModel doFillQueueOverflowPolicyItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            items.add(policy.name());
+        }
+        return items;
+    }
+
+    public ListBoxModel doFillParseModeItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (ParseMode mode : ParseMode.values()) {
+            items.add(mode.name());
+        }
+        return items;
+    }
+
+    public ListBoxModel doFillBacklogPolicyItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (BacklogPolicy policy : BacklogPolicy.values()) {
+            items.add(policy.name());
+        }
+        return items;
+    }
+
     public boolean isApplicable(Class<? extends AbstractProject> clazz) {
         return true;
     }
@@ -164,4 +307,237 @@ public class TelegramBotGlobalConfiguration extends GlobalConfiguration {
         save();
     }
 
+    public int getQueueCapacity() {
+        return queueCapacity > 0 ? queueCapacity : DeliveryQueue.DEFAULT_CAPACITY;
+    }
+
+    @DataBoundSetter
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getQueueWorkers() {
+        return queueWorkers > 0 ? queueWorkers : DeliveryQueue.DEFAULT_WORKERS;
+    }
+
+    @DataBoundSetter
+    public void setQueueWorkers(int queueWorkers) {
+        this.queueWorkers = queueWorkers;
+        save();
+        applyDeliverySettings();
+    }
+
+    public OverflowPolicy getQueueOverflowPolicy() {
+        return queueOverflowPolicy != null ? queueOverflowPolicy : OverflowPolicy.BLOCK;
+    }
+
+    @DataBoundSetter
+    public void setQueueOverflowPolicy(OverflowPolicy queueOverflowPolicy) {
+        this.queueOverflowPolicy = queueOverflowPolicy;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getCoalesceWindowMillis() {
+        return Math.max(0, coalesceWindowMillis);
+    }
+
+    @DataBoundSetter
+    public void setCoalesceWindowMillis(int coalesceWindowMillis) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getDeduplicationWindowSeconds() {
+        return Math.max(0, deduplicationWindowSeconds);
+    }
+
+    @DataBoundSetter
+    public void setDeduplicationWindowSeconds(int deduplicationWindowSeconds) {
+        this.deduplicationWindowSeconds = deduplicationWindowSeconds;
+        save();
+        applyDeliverySettings();
+    }
+
+    /**
+     * Number of duplicate notifications which were not sent
+     */
+    public long getSuppressedDuplicates() {
+        return DeduplicationCache.getInstance().getSuppressedCount();
+    }
+
+    public BacklogPolicy getBacklogPolicy() {
+        return backlogPolicy != null ? backlogPolicy : BacklogPolicy.PARK;
+    }
+
+    @DataBoundSetter
+    public void setBacklogPolicy(BacklogPolicy backlogPolicy) {
+        this.backlogPolicy = backlogPolicy;
+        save();
+        applyDeliverySettings();
+    }
+
+    /**
+     * State of the circuit breaker around the Telegram API calls
+     */
+    public String getCircuitBreakerStatus() {
+        return CircuitBreaker.getInstance().getStatus()
+                + ", parked messages: " + DeliveryQueue.getInstance().getParkedCount();
+    }
+
+    public int getHttpMaxIdleConnections() {
+        return httpMaxIdleConnections > 0 ? httpMaxIdleConnections : TelegramHttpClient.DEFAULT_MAX_IDLE_CONNECTIONS;
+    }
+
+    @DataBoundSetter
+    public void setHttpMaxIdleConnections(int httpMaxIdleConnections) {
+        this.httpMaxIdleConnections = httpMaxIdleConnections;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getHttpKeepAliveSeconds() {
+        return httpKeepAliveSeconds > 0 ? httpKeepAliveSeconds : TelegramHttpClient.DEFAULT_KEEP_ALIVE_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setHttpKeepAliveSeconds(int httpKeepAliveSeconds) {
+        this.httpKeepAliveSeconds = httpKeepAliveSeconds;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getHttpConnectTimeoutSeconds() {
+        return httpConnectTimeoutSeconds > 0 ? httpConnectTimeoutSeconds : TelegramHttpClient.DEFAULT_CONNECT_TIMEOUT_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setHttpConnectTimeoutSeconds(int httpConnectTimeoutSeconds) {
+        this.httpConnectTimeoutSeconds = httpConnectTimeoutSeconds;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getHttpReadTimeoutSeconds() {
+        return httpReadTimeoutSeconds > 0 ? httpReadTimeoutSeconds : TelegramHttpClient.DEFAULT_READ_TIMEOUT_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setHttpReadTimeoutSeconds(int httpReadTimeoutSeconds) {
+        this.httpReadTimeoutSeconds = httpReadTimeoutSeconds;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getHttpMaxRequestsPerHost() {
+        return httpMaxRequestsPerHost > 0 ? httpMaxRequestsPerHost : TelegramHttpClient.DEFAULT_MAX_REQUESTS_PER_HOST;
+    }
+
+    @DataBoundSetter
+    public void setHttpMaxRequestsPerHost(int httpMaxRequestsPerHost) {
+        this.httpMaxRequestsPerHost = httpMaxRequestsPerHost;
+        save();
+        applyDeliverySettings();
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled == null || http2Enabled;
+    }
+
+    @DataBoundSetter
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        save();
+        applyDeliverySettings();
+    }
+
+    public String getProxyHost() {
+        return proxyHost;
+    }
+
+    @DataBoundSetter
+    public void setProxyHost(String proxyHost) {
+        this.proxyHost = proxyHost != null ? proxyHost.trim() : null;
+        save();
+        applyDeliverySettings();
+    }
+
+    public int getProxyPort() {
+        return Math.max(0, proxyPort);
+    }
+
+    @DataBoundSetter
+    public void setProxyPort(int proxyPort) {
+        this.proxyPort = proxyPort;
+        save();
+        applyDeliverySettings();
+    }
+
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    /**
+     * Point the bot at another Bot API server, e.g. a local stand-in for load testing
+     */
+    @DataBoundSetter
+    public void setApiBaseUrl(String apiBaseUrl) {
+        this.apiBaseUrl = apiBaseUrl != null && !apiBaseUrl.trim().isEmpty() ? apiBaseUrl.trim() : null;
+        save();
+        startBotIfConfigured();
+    }
+
+    public String getCustomEmojis() {
+        return customEmojis;
+    }
+
+    /**
+     * Placeholders of the company's own, one name=emoji per line, e.g. prod=🏭
+     */
+    @DataBoundSetter
+    public void setCustomEmojis(String customEmojis) {
+        this.customEmojis = customEmojis;
+        save();
+        applyEmojiSettings();
+    }
+
+    public boolean isUploadFromAgent() {
+        return uploadFromAgent;
+    }
+
+    /**
+     * Upload files straight from the agents they are on, instead of through the controller
+     */
+    @DataBoundSetter
+    public void setUploadFromAgent(boolean uploadFromAgent) {
+        this.uploadFromAgent = uploadFromAgent;
+        save();
+    }
+
+    public int getMaxUploadMegabytes() {
+        return maxUploadMegabytes > 0 ? maxUploadMegabytes : FileSlice.DEFAULT_MAX_UPLOAD_MEGABYTES;
+    }
+
+    /**
+     * Largest file the Bot API accepts, larger files are compressed or split into parts
+     */
+    @DataBoundSetter
+    public void setMaxUploadMegabytes(int maxUploadMegabytes) {
+        this.maxUploadMegabytes = maxUploadMegabytes;
+        save();
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode != null ? parseMode : ParseMode.MARKDOWN;
+    }
+
+    @DataBoundSetter
+    public void setParseMode(ParseMode parseMode) {
+        this.parseMode = parseMode;
+        save();
+    }
+
 }
@@ -0,0 +1,36 @@
+package jenkinsci.plugins.telegrambot;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryMetrics;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+
+/**
+ * Exposes the {@link DeliveryMetrics} as JSON at {@code /telegram-bot-metrics/}, for administrators only
+ */
+@Extension
+public class TelegramBotMetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        // Not shown in the side panel
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "TelegramBot metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "telegram-bot-metrics";
+    }
+
+    public HttpResponse doIndex() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return HttpResponses.okJSON(DeliveryMetrics.getInstance().toJson());
+    }
+}
@@ -11,15 +11,29 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
+import hudson.util.FormValidation;
 import jenkins.tasks.SimpleBuildStep;
+import jenkinsci.plugins.telegrambot.telegram.TelegramBot;
 import jenkinsci.plugins.telegrambot.telegram.TelegramBotRunner;
+import jenkinsci.plugins.telegrambot.utils.LogUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
 import javax.annotation.Nonnull;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 public class TelegramBotPublisher extends Notifier implements SimpleBuildStep {
 
+    /**
+     * Most log lines matching the error patterns sent with the message
+     */
+    private static final int MAX_ERROR_LINES = 20;
+
     /**
      * The message that will be expanded and sent to users
      */
@@ -30,6 +44,15 @@ public class TelegramBotPublisher extends Notifier implements SimpleBuildStep {
     private final boolean whenFailed;
     private final boolean whenAborted;
 
+    /**
+     * For failed builds: the number of last lines of the log sent with the message,
+     * the log lines matching these regular expressions, one per line,
+     * and the size in KB above which the log is sent compressed as a file, 0 for none
+     */
+    private int logTailLines;
+    private String logErrorPatterns;
+    private int attachLogOverKilobytes;
+
     @DataBoundConstructor
     public TelegramBotPublisher(
             String message,
@@ -57,6 +80,23 @@ public class TelegramBotPublisher extends Notifier implements SimpleBuildStep {
         public String getDisplayName() {
             return TelegramBotGlobalConfiguration.PLUGIN_DISPLAY_NAME;
         }
+
+        public FormValidation doCheckLogTailLines(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckLogErrorPatterns(@QueryParameter String value) {
+            try {
+                LogUtils.compilePatterns(value);
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error(e.getDescription() + ": " + e.getPattern());
+            }
+        }
+
+        public FormValidation doCheckAttachLogOverKilobytes(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
     }
 
     @Override
@@ -81,8 +121,55 @@ public class TelegramBotPublisher extends Notifier implements SimpleBuildStep {
         boolean neededToSend = success || unstable || failed || aborted;
 
         if (neededToSend) {
-            TelegramBotRunner.getInstance().getBot()
-                    .sendMessage(getMessage(), run, filePath, taskListener);
+            final TelegramBot bot = TelegramBotRunner.getInstance().getBot();
+            final boolean failedBuild = result == Result.FAILURE;
+
+            bot.sendMessage(null, getMessage(), failedBuild ? getLogExcerpt(run, taskListener) : null,
+                    run, filePath, taskListener);
+
+            if (failedBuild && attachLogOverKilobytes > 0) {
+                attachLog(bot, run, taskListener);
+            }
+        }
+    }
+
+    /**
+     * Send the console log as a gzip-compressed file if it is larger than the setting
+     */
+    private void attachLog(TelegramBot bot, Run<?, ?> run, TaskListener taskListener)
+            throws IOException, InterruptedException {
+
+        // The file is compressed and uploaded in parts where it is, which needs a log file;
+        // other log storages only get the excerpt
+        @SuppressWarnings("deprecation")
+        final File log = run.getLogFile();
+        if (!log.isFile()) {
+            taskListener.getLogger().println("The console log is not stored as a file, it is not sent to Telegram");
+            return;
+        }
+
+        if (log.length() > attachLogOverKilobytes * 1024L) {
+            bot.telegramSendFileCompressed(new FilePath(log), run.getParent().getName() + "-" + run.getNumber() + ".log",
+                    "Console log of " + run.getFullDisplayName(), taskListener);
+        }
+    }
+
+    /**
+     * The log lines matching the error patterns, then the last lines of the log, null for none.
+     * The log is read without loading it into memory, see {@link LogUtils}.
+     */
+    private String getLogExcerpt(Run<?, ?> run, TaskListener taskListener) {
+        if (logTailLines <= 0 && (logErrorPatterns == null || logErrorPatterns.trim().isEmpty())) {
+            return null;
+        }
+
+        try (InputStream log = run.getLogInputStream()) {
+            final List<String> lines = LogUtils.excerpt(log, LogUtils.compilePatterns(logErrorPatterns),
+                    MAX_ERROR_LINES, logTailLines);
+            return lines.isEmpty() ? null : String.join("\n", lines);
+        } catch (IOException | PatternSyntaxException e) {
+            taskListener.getLogger().println("Unable to take an excerpt of the build log: " + e.getMessage());
+            return null;
         }
     }
 
@@ -105,4 +192,31 @@ public class TelegramBotPublisher extends Notifier implements SimpleBuildStep {
     public boolean isWhenAborted() {
         return whenAborted;
     }
+
+    public int getLogTailLines() {
+        return logTailLines;
+    }
+
+    @DataBoundSetter
+    public void setLogTailLines(int logTailLines) {
+        this.logTailLines = logTailLines;
+    }
+
+    public String getLogErrorPatterns() {
+        return logErrorPatterns;
+    }
+
+    @DataBoundSetter
+    public void setLogErrorPatterns(String logErrorPatterns) {
+        this.logErrorPatterns = logErrorPatterns;
+    }
+
+    public int getAttachLogOverKilobytes() {
+        return attachLogOverKilobytes;
+    }
+
+    @DataBoundSetter
+    public void setAttachLogOverKilobytes(int attachLogOverKilobytes) {
+        this.attachLogOverKilobytes = attachLogOverKilobytes;
+    }
 }
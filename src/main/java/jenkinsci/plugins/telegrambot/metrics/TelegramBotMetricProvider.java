@@ -0,0 +1,45 @@
+package jenkinsci.plugins.telegrambot.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+import jenkinsci.plugins.telegrambot.telegram.delivery.CircuitBreaker;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeduplicationCache;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryMetrics;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryQueue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes the {@link DeliveryMetrics} as gauges under {@code telegram-bot.*} when the Metrics plugin is installed
+ */
+@Extension(optional = true)
+public class TelegramBotMetricProvider extends MetricProvider {
+    private static final String PREFIX = "telegram-bot.";
+
+    @Override
+    public MetricSet getMetricSet() {
+        final DeliveryMetrics metrics = DeliveryMetrics.getInstance();
+
+        final Map<String, Metric> gauges = new LinkedHashMap<>();
+        gauges.put(PREFIX + "calls.succeeded", (Gauge<Long>) metrics::getSucceeded);
+        gauges.put(PREFIX + "calls.failed", (Gauge<Long>) metrics::getFailed);
+        gauges.put(PREFIX + "calls.retries", (Gauge<Long>) metrics::getRetries);
+        gauges.put(PREFIX + "calls.tooManyRequests", (Gauge<Long>) metrics::getTooManyRequests);
+        gauges.put(PREFIX + "calls.forbidden", (Gauge<Long>) metrics::getForbidden);
+        gauges.put(PREFIX + "calls.inFlight", (Gauge<Long>) metrics::getInFlight);
+        gauges.put(PREFIX + "calls.maxInFlight", (Gauge<Long>) metrics::getMaxInFlight);
+        gauges.put(PREFIX + "queue.size", (Gauge<Integer>) () -> DeliveryQueue.getInstance().size());
+        gauges.put(PREFIX + "queue.parked", (Gauge<Integer>) () -> DeliveryQueue.getInstance().getParkedCount());
+        gauges.put(PREFIX + "duplicates.suppressed",
+                (Gauge<Long>) () -> DeduplicationCache.getInstance().getSuppressedCount());
+        gauges.put(PREFIX + "circuitBreaker.state",
+                (Gauge<String>) () -> CircuitBreaker.getInstance().getState().name());
+
+        // The queue is looked up on every read, so registering the gauges does not create it and start its workers
+        return () -> gauges;
+    }
+}
@@ -0,0 +1,171 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Uploads a file to Telegram from the agent the file is on, so it doesn't travel over the remoting channel.
+ * Only the JSON answer of Telegram comes back to the controller.
+ * <p>
+ * The multipart request body is streamed with the JDK HTTP client, so the agent needs no libraries of its own;
+ * the file, or the {@link FileSlice} of it, is read as the body is written.
+ * The agent connects through the proxy of the global configuration, if one is set, else the way its JVM does.
+ * The bot token is kept as a {@link Secret}, only read in full to connect, and never logged.
+ */
+final class AgentUpload extends MasterToSlaveFileCallable<String> {
+    private static final long serialVersionUID = 1L;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String apiUrl;
+    private final Secret token;
+    private final String method;
+    private final String field;
+    private final long chatId;
+    private final FileSlice slice;
+    private final String caption;
+    private final String parseMode;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final String proxyHost;
+    private final int proxyPort;
+
+    /**
+     * @param apiUrl     base URL of the Bot API, e.g. https://api.telegram.org
+     * @param method     the API method, e.g. sendDocument
+     * @param field      the form field of the file, e.g. document
+     * @param caption    caption of the file, null for none
+     * @param parseMode  parse mode of the caption, null for plain text
+     * @param proxyHost  HTTP proxy to connect through, null or empty for the JVM default of the agent
+     */
+    AgentUpload(String apiUrl, Secret token, String method, String field, long chatId, FileSlice slice,
+                String caption, String parseMode, int connectTimeoutMillis, int readTimeoutMillis,
+                String proxyHost, int proxyPort) {
+        this.apiUrl = apiUrl;
+        this.token = token;
+        this.method = method;
+        this.field = field;
+        this.chatId = chatId;
+        this.slice = slice;
+        this.caption = caption;
+        this.parseMode = parseMode;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+    }
+
+    /**
+     * @return the JSON answer of Telegram, successful or not
+     */
+    @Override
+    public String invoke(File f, VirtualChannel channel) throws IOException {
+        // Opened before connecting, so a missing file doesn't reach the Telegram API
+        try (InputStream in = open(f)) {
+            return upload(in);
+        }
+    }
+
+    private String upload(InputStream file) throws IOException {
+        final String boundary = "----jenkins-telegram-" + UUID.randomUUID();
+        final URL url = new URL(apiUrl + "/bot" + token.getPlainText() + "/" + method);
+        final HttpURLConnection connection = (HttpURLConnection) (proxyHost != null && !proxyHost.isEmpty()
+                ? url.openConnection(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)))
+                : url.openConnection());
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                writeField(out, boundary, "chat_id", Long.toString(chatId));
+                if (caption != null && !caption.isEmpty()) {
+                    writeField(out, boundary, "caption", caption);
+                    if (parseMode != null) {
+                        writeField(out, boundary, "parse_mode", parseMode);
+                    }
+                }
+
+                write(out, "--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"" + field + "\"; filename=\"" + escape(slice.getName()) + "\"\r\n"
+                        + "Content-Type: application/octet-stream\r\n\r\n");
+                final byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                while ((read = read(file, buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+                write(out, "\r\n--" + boundary + "--\r\n");
+            }
+
+            final int status = connection.getResponseCode();
+            try (InputStream answer = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (answer == null) {
+                    throw new IOException("No answer from the Telegram API, HTTP status " + status);
+                }
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                answer.transferTo(body);
+                return body.toString(StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private InputStream open(File f) throws FileReadFailure {
+        try {
+            return slice.open(f);
+        } catch (IOException e) {
+            throw new FileReadFailure(e);
+        }
+    }
+
+    private static int read(InputStream in, byte[] buffer) throws FileReadFailure {
+        try {
+            return in.read(buffer);
+        } catch (IOException e) {
+            throw new FileReadFailure(e);
+        }
+    }
+
+    private static void writeField(OutputStream out, String boundary, String name, String value) throws IOException {
+        write(out, "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+                + value + "\r\n");
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String escape(String fileName) {
+        return fileName.replace("\\", "\\\\").replace("\"", "\\\"").replace("\r", "").replace("\n", "");
+    }
+
+    /**
+     * The file couldn't be read on the agent, as opposed to the upload failing
+     */
+    static final class FileReadFailure extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FileReadFailure(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
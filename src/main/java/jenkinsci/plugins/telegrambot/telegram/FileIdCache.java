@@ -0,0 +1,216 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import hudson.FilePath;
+import hudson.init.Terminator;
+import hudson.remoting.VirtualChannel;
+import hudson.util.AtomicFileWriter;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the file_id Telegram returned for an uploaded file, by the content of the file,
+ * so a file sent build after build is uploaded only once.
+ * <p>
+ * Keys are made of the SHA-256 digest and size of the file, computed where the file is, so a cache hit
+ * doesn't move the file over the remoting channel, plus the file extension and a hash of the bot token,
+ * since a file_id is only valid for the bot it was returned to. The least recently used entries are
+ * dropped first. The cache is kept under JENKINS_HOME; changes are written back every little while and
+ * on shutdown, never by the thread sending the file.
+ */
+public class FileIdCache {
+    private static final Logger LOG = Logger.getLogger(FileIdCache.class.getName());
+
+    private static final String FILE_NAME = "telegram-file-ids.txt";
+    private static final int MAX_ENTRIES = 10_000;
+    private static final long SAVE_INTERVAL_SECONDS = 30;
+
+    private static FileIdCache instance;
+
+    private final File file;
+    private final Object saveLock = new Object();
+    private boolean dirty;
+    private final LinkedHashMap<String, String> fileIds = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    FileIdCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    public synchronized static FileIdCache getInstance() {
+        if (instance == null) {
+            instance = new FileIdCache(new File(Jenkins.get().getRootDir(), FILE_NAME));
+            Timer.get().scheduleWithFixedDelay(instance::save, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+        return instance;
+    }
+
+    @Terminator
+    public synchronized static void shutdown() {
+        if (instance != null) {
+            instance.save();
+        }
+    }
+
+    /**
+     * The cache key of the file as sent by the bot with the given token, computed where the file is
+     *
+     * @return the key, or null if the file could not be read
+     */
+    public static String key(String token, FilePath filePath) throws InterruptedException {
+        try {
+            final String fingerprint = filePath.act(new Fingerprint());
+            final String name = filePath.getName();
+            final int dot = name.lastIndexOf('.');
+            final String extension = dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+            return sha256(token.getBytes(StandardCharsets.UTF_8)).substring(0, 16) + ':' + fingerprint + ':' + extension;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to compute the digest of " + filePath.getRemote(), e);
+            return null;
+        }
+    }
+
+    public synchronized String get(String key) {
+        return key != null ? fileIds.get(key) : null;
+    }
+
+    public synchronized void put(String key, String fileId) {
+        if (key != null && fileId != null && !fileId.equals(fileIds.put(key, fileId))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Forget a file_id Telegram doesn't accept any more
+     */
+    public synchronized void remove(String key) {
+        if (key != null && fileIds.remove(key) != null) {
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    fileIds.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to read the file_id cache, starting with an empty one", e);
+            fileIds.clear();
+        }
+    }
+
+    /**
+     * Write the entries if they changed, least recently used first, so they are read back in the same order.
+     * Only copying them holds up the senders, not the writing.
+     */
+    void save() {
+        synchronized (saveLock) {
+            final Map<String, String> entries;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                entries = new LinkedHashMap<>(fileIds);
+                dirty = false;
+            }
+
+            if (!write(entries)) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private boolean write(Map<String, String> entries) {
+        try {
+            final AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write(' ');
+                    writer.write(entry.getValue());
+                    writer.write('\n');
+                }
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to save the file_id cache", e);
+            return false;
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Digest and size of the file, computed on the agent the file is on
+     */
+    private static final class Fingerprint extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException {
+            final MessageDigest digest = newDigest();
+            final byte[] buffer = new byte[64 * 1024];
+            long size = 0;
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            return toHex(digest.digest()) + ':' + size;
+        }
+    }
+}
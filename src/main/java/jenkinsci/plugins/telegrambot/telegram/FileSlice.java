@@ -0,0 +1,296 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import hudson.FilePath;
+import hudson.remoting.RemoteInputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * What is uploaded of a file: the file itself, or a part of its gzip-compressed or plain content
+ * when the file is larger than the Bot API accepts.
+ * <p>
+ * The content is compressed once, where the file is, into a temporary file there; the parts are ranges of it,
+ * or of the file itself if it isn't compressed, read straight from their offset. So neither the controller
+ * nor the agent hold more than a chunk of it in memory. The temporary file is deleted with {@link #dispose}.
+ * The parts are named like the files of {@code split}, e.g. build.log.gz.001, so they join with {@code cat}.
+ */
+public final class FileSlice implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest file Telegram lets a bot upload
+     */
+    public static final int DEFAULT_MAX_UPLOAD_MEGABYTES = 50;
+
+    private static final Logger LOG = Logger.getLogger(FileSlice.class.getName());
+
+    private static final Set<String> COMPRESSIBLE = Set.of(
+            "log", "txt", "out", "xml", "json", "html", "htm", "csv", "tsv", "md", "yaml", "yml", "properties",
+            "sql", "svg", "tap", "trx");
+
+    private final String name;
+    private final String source;
+    private final long offset;
+    private final long length;
+
+    /**
+     * @param source  path of the temporary file holding the compressed content, where the file is,
+     *                null to read the file itself
+     * @param offset  offset of the slice in the content
+     * @param length  length of the slice, -1 for the whole file
+     */
+    private FileSlice(String name, String source, long offset, long length) {
+        this.name = name;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * The whole file as it is
+     */
+    public static FileSlice whole(FilePath filePath) {
+        return new FileSlice(filePath.getName(), null, 0, -1);
+    }
+
+    /**
+     * Plan the upload of the file: the file itself if it isn't larger than the limit, else its content,
+     * gzip-compressed if it is text, in as many parts of up to the limit as needed.
+     * Compressed content is written to a temporary file where the file is, see {@link #dispose}.
+     */
+    public static List<FileSlice> plan(FilePath filePath, long maxBytes) throws IOException, InterruptedException {
+        final long size = filePath.length();
+        if (size <= maxBytes) {
+            return Collections.singletonList(whole(filePath));
+        }
+
+        if (!isCompressible(filePath.getName())) {
+            return split(filePath.getName(), null, size, maxBytes);
+        }
+        return planCompressed(filePath, filePath.getName(), maxBytes);
+    }
+
+    /**
+     * Plan the upload of the gzip-compressed content of the file, whatever its size,
+     * in as many parts of up to the limit as needed. The content is compressed once, into a temporary file
+     * where the file is, see {@link #dispose}.
+     *
+     * @param name  name of the file the content is uploaded as, without the .gz extension
+     */
+    public static List<FileSlice> planCompressed(FilePath filePath, String name, long maxBytes)
+            throws IOException, InterruptedException {
+        // Up to the size it has now, so a file still growing, e.g. a build log, is compressed consistently
+        final String compressed = filePath.act(new Compress(filePath.length()));
+        return split(name + ".gz", compressed, new FilePath(filePath.getChannel(), compressed).length(), maxBytes);
+    }
+
+    /**
+     * Delete the temporary file the slices are read from, if any, once they are sent
+     */
+    public static void dispose(FilePath filePath, List<FileSlice> slices) {
+        final String source = slices.isEmpty() ? null : slices.get(0).source;
+        if (source == null) {
+            return;
+        }
+
+        try {
+            new FilePath(filePath.getChannel(), source).delete();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to delete the compressed copy of " + filePath.getName() + ": " + source, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param total  length of the content
+     */
+    private static List<FileSlice> split(String name, String source, long total, long maxBytes) {
+        if (total <= maxBytes) {
+            return Collections.singletonList(new FileSlice(name, source, 0, total));
+        }
+
+        final long count = (total + maxBytes - 1) / maxBytes;
+        final List<FileSlice> parts = new ArrayList<>((int) count);
+        for (int i = 0; i < count; i++) {
+            final long offset = i * maxBytes;
+            parts.add(new FileSlice(String.format("%s.%03d", name, i + 1), source, offset,
+                    Math.min(maxBytes, total - offset)));
+        }
+        return parts;
+    }
+
+    /**
+     * Name the slice is uploaded under
+     */
+    public String getName() {
+        return name;
+    }
+
+    public boolean isWhole() {
+        return length < 0;
+    }
+
+    /**
+     * The file the slice is read from: the file itself, or the temporary file with its compressed content
+     */
+    public FilePath locate(FilePath filePath) {
+        return source != null ? new FilePath(filePath.getChannel(), source) : filePath;
+    }
+
+    /**
+     * Open the slice of the file, wherever the file is
+     */
+    public InputStream open(FilePath filePath) throws IOException, InterruptedException {
+        final FilePath file = locate(filePath);
+        if (isWhole()) {
+            return file.read();
+        }
+        return file.isRemote() ? file.act(new Open(this)) : open(new File(file.getRemote()));
+    }
+
+    /**
+     * Open the slice of a local file, the one {@link #locate} gives
+     */
+    public InputStream open(File file) throws IOException {
+        if (isWhole()) {
+            return Files.newInputStream(file.toPath());
+        }
+
+        final SeekableByteChannel channel = Files.newByteChannel(file.toPath());
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Limited(Channels.newInputStream(channel), length);
+    }
+
+    private static boolean isCompressible(String fileName) {
+        final int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && COMPRESSIBLE.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return isWhole() ? name : String.format("%s (%d bytes at %d)", name, length, offset);
+    }
+
+    /**
+     * Compresses the first bytes of the file into a temporary file, on the agent the file is on
+     *
+     * @return path of the temporary file
+     */
+    private static final class Compress extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final long size;
+
+        Compress(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException {
+            final File compressed = File.createTempFile("telegram-upload-", ".gz");
+            try (InputStream in = new Limited(Files.newInputStream(f.toPath()), size);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed.toPath()), 64 * 1024)) {
+                in.transferTo(out);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(compressed.toPath());
+                throw e;
+            }
+            return compressed.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Opens the slice on the agent the file is on; it is read from the controller as the upload goes
+     */
+    private static final class Open extends MasterToSlaveFileCallable<InputStream> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileSlice slice;
+
+        Open(FileSlice slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public InputStream invoke(File f, VirtualChannel channel) throws IOException {
+            return new RemoteInputStream(slice.open(f), RemoteInputStream.Flag.GREEDY);
+        }
+    }
+
+    /**
+     * Reads up to a number of bytes of another stream
+     */
+    private static final class Limited extends FilterInputStream {
+        private long remaining;
+
+        Limited(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import java.util.Locale;
+
+/**
+ * How a file is sent to Telegram, by its extension
+ */
+public enum MediaKind {
+    PHOTO("sendPhoto", "photo"),
+    VIDEO("sendVideo", "video"),
+    AUDIO("sendAudio", "audio"),
+    DOCUMENT("sendDocument", "document");
+
+    private final String method;
+    private final String field;
+
+    MediaKind(String method, String field) {
+        this.method = method;
+        this.field = field;
+    }
+
+    public static MediaKind of(String fileName) {
+        final int dot = fileName != null ? fileName.lastIndexOf('.') : -1;
+        if (dot < 0) {
+            return DOCUMENT;
+        }
+
+        switch (fileName.substring(dot + 1).toLowerCase(Locale.ROOT)) {
+            case "jpg":
+            case "jpeg":
+            case "png":
+            case "gif":
+            case "webp":
+                return PHOTO;
+            case "mp4":
+            case "avi":
+            case "mov":
+            case "mkv":
+                return VIDEO;
+            case "mp3":
+            case "wav":
+            case "flac":
+            case "ogg":
+            case "m4a":
+                return AUDIO;
+            default:
+                return DOCUMENT;
+        }
+    }
+
+    /**
+     * The Bot API method sending a file of this kind
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * The form field of the file in the request of {@link #getMethod()}
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * The kind of the files this one can share a media group with: Telegram mixes photos and videos
+     * in an album, but documents and audio files only with their own kind
+     */
+    public MediaKind getAlbumKind() {
+        return this == VIDEO ? PHOTO : this;
+    }
+}
@@ -1,113 +1,347 @@
 package jenkinsci.plugins.telegrambot.telegram;
 
+import hudson.AbortException;
 import hudson.FilePath;
+import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.ChannelClosedException;
+import hudson.util.Secret;
 import jenkins.model.GlobalConfiguration;
+import jenkinsci.plugins.telegrambot.MacroCache;
 import jenkinsci.plugins.telegrambot.TelegramBotGlobalConfiguration;
 import jenkinsci.plugins.telegrambot.telegram.commands.*;
+import jenkinsci.plugins.telegrambot.telegram.delivery.CircuitBreaker;
+import jenkinsci.plugins.telegrambot.telegram.delivery.CircuitOpenException;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeduplicationCache;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryMetrics;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryQueue;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryResult;
+import jenkinsci.plugins.telegrambot.telegram.delivery.FileReadException;
+import jenkinsci.plugins.telegrambot.telegram.delivery.OutboundMessage;
+import jenkinsci.plugins.telegrambot.telegram.delivery.RateLimiter;
+import jenkinsci.plugins.telegrambot.telegram.delivery.RetryPolicy;
 import jenkinsci.plugins.telegrambot.users.Subscribers;
+import jenkinsci.plugins.telegrambot.users.User;
 import jenkinsci.plugins.telegrambot.utils.EmojiUtils;
+import jenkinsci.plugins.telegrambot.utils.MessageSplitter;
+import jenkinsci.plugins.telegrambot.utils.MessageTemplate;
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+import okhttp3.OkHttpClient;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
 import org.telegram.telegrambots.meta.api.methods.send.SendAudio;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaAudio;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaDocument;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaVideo;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
     private static final Logger LOG = Logger.getLogger(TelegramBot.class.getName());
 
+    private static final int MAX_MEDIA_GROUP_SIZE = 10;
+
+    /**
+     * Descriptions of the 400 answers to a file_id Telegram doesn't know, or can't send the way it was asked to
+     */
+    private static final List<String> WRONG_FILE_ID_DESCRIPTIONS = List.of(
+            "wrong file identifier", "wrong remote file identifier", "wrong type of the web page content",
+            "failed to get http url content");
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     private static final TelegramBotGlobalConfiguration CONFIG = GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class);
     private static final Subscribers SUBSCRIBERS = Subscribers.getInstance();
 
     private final String token;
     private final String botUsername;
-    private final TelegramClient telegramClient;
+    private final String apiBaseUrl;
+    private final TelegramUrl telegramUrl;
+    private volatile TelegramClient telegramClient;
+    private volatile OkHttpClient httpClient;
 
 
     public TelegramBot(String token, String botUsername) {
+        this(token, botUsername, null);
+    }
+
+    /**
+     * @param apiBaseUrl  base URL of the Bot API, e.g. of a local stand-in server; null or empty for the Telegram one
+     */
+    public TelegramBot(String token, String botUsername, String apiBaseUrl) {
         this.token = token;
         this.botUsername = botUsername;
-        this.telegramClient = new OkHttpTelegramClient(token);
+        this.apiBaseUrl = apiBaseUrl != null && !apiBaseUrl.isEmpty() ? apiBaseUrl : null;
+        this.telegramUrl = TelegramHttpClient.toTelegramUrl(this.apiBaseUrl);
     }
 
-    public void sendMessage(Long chatId, String message) {
+    /**
+     * Client bound to the current shared HTTP client, rebuilt when the transport settings change
+     */
+    private TelegramClient getTelegramClient() {
+        final OkHttpClient current = TelegramHttpClient.getInstance().getClient();
+        if (httpClient != current) {
+            synchronized (this) {
+                if (httpClient != current) {
+                    telegramClient = new OkHttpTelegramClient(current, token, telegramUrl);
+                    httpClient = current;
+                }
+            }
+        }
+        return telegramClient;
+    }
+
+    /**
+     * @return the result for the chat, completed once the delivery queue has sent the message
+     */
+    public CompletableFuture<DeliveryResult> sendMessage(Long chatId, String message) {
         // Process emoji placeholders in direct messages too
         String processedMessage = EmojiUtils.replaceEmojiPlaceholders(message);
-        
-        final SendMessage sendMessageRequest = SendMessage.builder()
-                .chatId(chatId.toString())
-                .text(processedMessage)
-                .parseMode("Markdown")
-                .build();
 
+        return enqueueText(chatId, processedMessage, ParseMode.MARKDOWN);
+    }
+
+    /**
+     * Enqueue a processed text, split into as many messages as needed.
+     * Sent by the delivery queue, so replies are retried without blocking the update consumer.
+     */
+    private CompletableFuture<DeliveryResult> enqueueText(Long chatId, String text, ParseMode parseMode) {
         try {
-            telegramClient.execute(sendMessageRequest);
-        } catch (TelegramApiException e) {
+            final List<String> parts = MessageSplitter.split(text, MessageSplitter.MESSAGE_LIMIT, parseMode);
+            return enqueue(DeliveryQueue.getInstance(), chatId, parts, partModes(parts, parseMode));
+        } catch (RejectedExecutionException e) {
             LOG.log(Level.SEVERE, String.format(
-                    "TelegramBot: Error while sending message: %s%n%s", chatId, processedMessage), e);
+                    "TelegramBot: Error while sending message: %s%n%s", chatId, text), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.log(Level.WARNING, "TelegramBot: Interrupted while sending message to: " + chatId, e);
         }
+        return CompletableFuture.completedFuture(DeliveryResult.SKIPPED);
+    }
+
+    /**
+     * Send an already expanded message, called by the {@link DeliveryQueue} workers
+     */
+    public void deliver(OutboundMessage message) throws TelegramApiException {
+        await(deliverAsync(message));
+    }
+
+    /**
+     * Send an already expanded message without waiting for Telegram to answer
+     */
+    public CompletableFuture<Message> deliverAsync(OutboundMessage message) {
+        final SendMessage sendMessageRequest = SendMessage.builder()
+                .chatId(message.getChatId().toString())
+                .text(message.getText())
+                .parseMode(message.getParseMode().getTelegramName())
+                .build();
+
+        return executeAsync(message.getChatId(), () -> DeliveryMetrics.getInstance()
+                .time("sendMessage", getTelegramClient().executeAsync(sendMessageRequest)));
     }
 
-    private static String expandMessage(String message, Run<?, ?> run, FilePath filePath, TaskListener taskListener)
+    /**
+     * Expand the macros of the message. The message is trusted to be formatted for the parse mode,
+     * while the macro values are escaped for it if the mode asks for that.
+     */
+    private static String expandMessage(String message, ParseMode parseMode, Run<?, ?> run, FilePath filePath,
+                                        TaskListener taskListener) throws IOException, InterruptedException {
+
+        // Emoji placeholders of the configured text are already replaced in the compiled template.
+        // Macro values are shared by all the Telegram steps of the run
+        final MessageTemplate template = MessageTemplate.of(message);
+        final MessageTemplate.Expander expander;
+        if (run != null) {
+            final MacroCache macroCache = MacroCache.of(run);
+            expander = macro -> macroCache.expand(macro, run, filePath, m -> expandMacro(m, run, filePath, taskListener));
+        } else {
+            expander = macro -> expandMacro(macro, null, filePath, taskListener);
+        }
+
+        if (!parseMode.isEscapingMacroValues()) {
+            return template.render(expander);
+        }
+        return template.render(macro -> parseMode.escape(expander.expand(macro)));
+    }
+
+    private static String expandMacro(String macro, Run<?, ?> run, FilePath filePath, TaskListener taskListener)
             throws IOException, InterruptedException {
 
         try {
-            // First expand token macros
-            String expandedMessage = TokenMacro.expandAll(run, filePath, taskListener, message);
-            
-            // Then process emoji placeholders
-            return EmojiUtils.replaceEmojiPlaceholders(expandedMessage);
+            // Macro values may hold emoji placeholders too
+            return EmojiUtils.replaceEmojiPlaceholders(TokenMacro.expandAll(run, filePath, taskListener, macro));
         } catch (MacroEvaluationException e) {
             LOG.log(Level.SEVERE, "Error while expanding the message", e);
         }
 
-        // Fallback: still process emojis even if token expansion fails
-        return EmojiUtils.replaceEmojiPlaceholders(message);
+        // Fallback: keep the macro as it is
+        return EmojiUtils.replaceEmojiPlaceholders(macro);
     }
 
-    public void sendMessage(
+    /**
+     * Expand the message and enqueue it for the chat, or for all the approved subscribers if the chat is null.
+     *
+     * @return the aggregated result, completed once every recipient was served by the delivery queue
+     */
+    public CompletableFuture<DeliveryResult> sendMessage(
             Long chatId, String message, Run<?, ?> run, FilePath filePath, TaskListener taskListener)
             throws IOException, InterruptedException {
 
-        final String expandedMessage = expandMessage(message, run, filePath, taskListener);
+        return sendMessage(chatId, message, null, run, filePath, taskListener);
+    }
 
-        try {
-            if (chatId == null) {
-                SUBSCRIBERS.getApprovedUsers()
-                        .forEach(user -> this.sendMessage(user.getId(), expandedMessage));
-            } else {
-                sendMessage(chatId, expandedMessage);
+    /**
+     * Expand the message and enqueue it with an excerpt of the build log after it, shown as it is
+     * in a preformatted block. Macros and emoji placeholders of the excerpt are left as they are.
+     * The excerpt is a message of its own, cut to fit, so splitting the message never cuts the block.
+     *
+     * @param logExcerpt  lines of the log, null or empty for none
+     * @return the aggregated result, completed once every recipient was served by the delivery queue
+     */
+    public CompletableFuture<DeliveryResult> sendMessage(
+            Long chatId, String message, String logExcerpt, Run<?, ?> run, FilePath filePath, TaskListener taskListener)
+            throws IOException, InterruptedException {
+
+        final ParseMode parseMode = CONFIG.getParseMode();
+        String expandedMessage = expandMessage(message, parseMode, run, filePath, taskListener);
+        final List<String> parts = new ArrayList<>(
+                MessageSplitter.split(expandedMessage, MessageSplitter.MESSAGE_LIMIT, parseMode));
+        if (logExcerpt != null && !logExcerpt.isEmpty()) {
+            final String excerpt = parseMode.preformatted(logExcerpt, MessageSplitter.MESSAGE_LIMIT);
+            parts.add(excerpt);
+            expandedMessage = expandedMessage + "\n\n" + excerpt;
+        }
+        final List<ParseMode> partModes = partModes(parts, parseMode);
+
+        final List<Long> chatIds = chatId != null
+                ? Collections.singletonList(chatId)
+                : SUBSCRIBERS.getApprovedUsers().stream().map(User::getId).collect(Collectors.toList());
+
+        DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+
+        // Only enqueue here, the delivery queue workers do the HTTP calls
+        final DeliveryQueue deliveryQueue = DeliveryQueue.getInstance();
+        final DeduplicationCache deduplicationCache = DeduplicationCache.getInstance();
+        final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>(chatIds.size());
+        final String sentText = expandedMessage;
+        int duplicates = 0;
+        for (Long id : chatIds) {
+            if (deduplicationCache.isDuplicate(id, sentText)) {
+                duplicates++;
+                results.add(CompletableFuture.completedFuture(DeliveryResult.SKIPPED));
+                continue;
             }
 
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Error while sending the message", e);
+            final CompletableFuture<DeliveryResult> sent;
+            try {
+                sent = enqueue(deliveryQueue, id, parts, partModes);
+            } catch (RejectedExecutionException e) {
+                deduplicationCache.forget(id, sentText);
+                throw new AbortException(e.getMessage());
+            } catch (InterruptedException e) {
+                deduplicationCache.forget(id, sentText);
+                throw e;
+            }
+
+            // Only a text that reached the chat suppresses the same text later on
+            sent.thenAccept(result -> {
+                if (result.getSent() < result.getTotal()) {
+                    deduplicationCache.forget(id, sentText);
+                }
+            });
+            results.add(sent);
+        }
+
+        if (CONFIG.isShouldLogToConsole()) {
+            taskListener.getLogger().println(expandedMessage);
+            if (partModes.contains(ParseMode.PLAIN) && parseMode != ParseMode.PLAIN) {
+                taskListener.getLogger().println(String.format(
+                        "TelegramBot: The message is not valid %s, sent as plain text", parseMode.getTelegramName()));
+            }
+            if (duplicates > 0) {
+                taskListener.getLogger().println(String.format(
+                        "TelegramBot: Not sent to %d chat(s), the same message was sent there recently", duplicates));
+            }
         }
 
-        if (CONFIG.isShouldLogToConsole()) taskListener.getLogger().println(expandedMessage);
+        final CompletableFuture<DeliveryResult> result = DeliveryResult.allOf(results);
+        result.thenAccept(r -> LOG.log(Level.FINE, "TelegramBot: Message delivered ({0})", r));
+        return result;
+    }
+
+    /**
+     * The parse mode each part is sent with: the requested one if Telegram can parse the part in it,
+     * else plain text, so the part isn't rejected
+     */
+    private static List<ParseMode> partModes(List<String> parts, ParseMode parseMode) {
+        final List<ParseMode> modes = new ArrayList<>(parts.size());
+        for (String part : parts) {
+            modes.add(parseMode.forText(part));
+        }
+        return modes;
+    }
+
+    /**
+     * Enqueue the parts of a message for one chat
+     *
+     * @return the result for the chat, sent only if every part was sent
+     */
+    private static CompletableFuture<DeliveryResult> enqueue(DeliveryQueue deliveryQueue, Long chatId,
+                                                             List<String> parts, List<ParseMode> partModes)
+            throws InterruptedException {
+
+        final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            final OutboundMessage outboundMessage = new OutboundMessage(chatId, parts.get(i), partModes.get(i));
+            deliveryQueue.enqueue(outboundMessage);
+            results.add(outboundMessage.getResult());
+        }
+        return results.size() == 1 ? results.get(0) : DeliveryResult.worstOf(results);
     }
 
-    public void sendMessage(
+    public CompletableFuture<DeliveryResult> sendMessage(
             String message, Run<?, ?> run, FilePath filePath, TaskListener taskListener)
             throws IOException, InterruptedException {
 
-        sendMessage(null, message, run, filePath, taskListener);
+        return sendMessage(null, message, run, filePath, taskListener);
     }
 
     /**
@@ -119,10 +353,8 @@ public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
             return;
         }
 
-        final InputFile inputFile = new InputFile(file);
-        
         try {
-            sendFileByType(chatId, inputFile, file.getName(), caption);
+            await(executeAsync(chatId, () -> sendFileByType(chatId, new InputFile(file), file.getName(), caption)));
         } catch (TelegramApiException e) {
             LOG.log(Level.SEVERE, String.format(
                     "TelegramBot: Error while sending file: %s to chat: %s", file.getName(), chatId), e);
@@ -134,153 +366,881 @@ public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
      */
     public void telegramSendFile(Long chatId, FilePath filePath, String caption, TaskListener taskListener) 
             throws IOException, InterruptedException {
+        if (!isSendableFile(filePath)) {
+            return;
+        }
+
+        final DeliveryResult result = awaitResult(sendSlices(Collections.singletonList(chatId), filePath,
+                FileSlice.plan(filePath, getMaxUploadBytes()), caption));
+
+        if (result.getSent() > 0 && CONFIG != null && CONFIG.isShouldLogToConsole() && taskListener != null) {
+            taskListener.getLogger().println("Sent file to Telegram: " + filePath.getName());
+        }
+    }
+
+    /**
+     * Send a file to all approved subscribers and wait until every one of them was served
+     *
+     * @return the aggregated result of sending to every subscriber
+     */
+    public DeliveryResult telegramSendFile(FilePath filePath, String caption, Run<?, ?> run, TaskListener taskListener) 
+            throws IOException, InterruptedException {
+
+        if (!isSendableFile(filePath)) {
+            return DeliveryResult.EMPTY;
+        }
+
+        final DeliveryResult result = awaitResult(telegramSendFileAsync(filePath, caption, run, taskListener));
+
+        if (CONFIG != null && CONFIG.isShouldLogToConsole() && taskListener != null) {
+            taskListener.getLogger().println(String.format(
+                    "Sent file to Telegram: %s (%s)", filePath.getName(), result));
+        }
+
+        return result;
+    }
+
+    /**
+     * Send several files to all approved subscribers and wait until every one of them was served.
+     * The files are sent as media groups of up to 10 files of a kind that can share one, the kinds one after
+     * another and the files of each kind in their order; the caption goes with the first file. Files too large to upload are sent on their own afterwards,
+     * see {@link FileSlice}.
+     *
+     * @return the aggregated result of sending every media group (or single file) to every subscriber
+     */
+    public DeliveryResult telegramSendFiles(List<FilePath> filePaths, String caption, Run<?, ?> run, TaskListener taskListener)
+            throws IOException, InterruptedException {
+
+        final List<FilePath> files = new ArrayList<>();
+        for (FilePath filePath : filePaths) {
+            if (isSendableFile(filePath)) {
+                files.add(filePath);
+            }
+        }
+        if (files.isEmpty()) {
+            return DeliveryResult.EMPTY;
+        }
+
+        final String expandedCaption = caption != null
+                ? expandMessage(caption, CONFIG.getParseMode(), run, files.get(0), taskListener) : null;
+        final List<Long> chatIds = SUBSCRIBERS.getApprovedUsers().stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+        if (chatIds.isEmpty()) {
+            return DeliveryResult.EMPTY;
+        }
+
+        final long maxBytes = getMaxUploadBytes();
+        final List<FilePath> groupable = new ArrayList<>(files.size());
+        final Map<FilePath, List<FileSlice>> oversized = new LinkedHashMap<>();
+        for (FilePath file : files) {
+            final List<FileSlice> slices = FileSlice.plan(file, maxBytes);
+            if (slices.get(0).isWhole()) {
+                groupable.add(file);
+            } else {
+                oversized.put(file, slices);
+            }
+        }
+
+        // Media groups one after another, so the chats get them in order
+        final List<List<FilePath>> groups = toMediaGroups(groupable);
+        CompletableFuture<DeliveryResult> sent = CompletableFuture.completedFuture(DeliveryResult.EMPTY);
+        int messages = 0;
+        for (List<FilePath> group : groups) {
+            final String groupCaption = messages++ == 0 ? expandedCaption : null;
+            final String cacheKey = group.size() == 1 ? FileIdCache.key(token, group.get(0)) : null;
+            DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+
+            sent = sent.thenCompose(sum -> (group.size() == 1
+                    ? sendFirst(chatIds, 0, group.get(0), FileSlice.whole(group.get(0)), groupCaption,
+                            cacheKey, FileIdCache.getInstance().get(cacheKey), new ArrayList<>())
+                    : sendMediaGroupFirst(chatIds, 0, group, groupCaption, new ArrayList<>()))
+                    .thenApply(sum::plus));
+        }
+        for (Map.Entry<FilePath, List<FileSlice>> file : oversized.entrySet()) {
+            final String fileCaption = messages == 0 ? expandedCaption : null;
+            messages += file.getValue().size();
+            DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+            sent = sent.thenCompose(sum -> sendSlices(chatIds, file.getKey(), file.getValue(), fileCaption)
+                    .thenApply(sum::plus));
+        }
+
+        final DeliveryResult result = awaitResult(sent);
+        if (CONFIG.isShouldLogToConsole()) {
+            taskListener.getLogger().println(String.format(
+                    "Sent %d files to Telegram in %d message(s) (%s)", files.size(), messages, result));
+        }
+        return result;
+    }
+
+    /**
+     * Send the gzip-compressed content of a file to all approved subscribers and wait until every one
+     * of them was served. The file is compressed once, where it is, and sent in parts if it is still too large.
+     *
+     * @param name  name of the file the content is sent as, without the .gz extension
+     * @return the aggregated result of sending every part to every subscriber
+     */
+    public DeliveryResult telegramSendFileCompressed(FilePath filePath, String name, String caption,
+                                                     TaskListener taskListener)
+            throws IOException, InterruptedException {
+
+        if (!isSendableFile(filePath)) {
+            return DeliveryResult.EMPTY;
+        }
+
+        final List<Long> chatIds = SUBSCRIBERS.getApprovedUsers().stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+        if (chatIds.isEmpty()) {
+            return DeliveryResult.EMPTY;
+        }
+
+        final List<FileSlice> slices = FileSlice.planCompressed(filePath, name, getMaxUploadBytes());
+        DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+        final DeliveryResult result = awaitResult(sendSlices(chatIds, filePath, slices, caption));
+
+        if (CONFIG.isShouldLogToConsole() && taskListener != null) {
+            taskListener.getLogger().println(String.format(
+                    "Sent file to Telegram: %s (%s)", slices.get(0).getName(), result));
+        }
+        return result;
+    }
+
+    /**
+     * Group the files into media groups of up to 10 files, keeping the order of the files of each kind
+     */
+    private static List<List<FilePath>> toMediaGroups(List<FilePath> files) {
+        final Map<MediaKind, List<FilePath>> byKind = new EnumMap<>(MediaKind.class);
+        for (FilePath file : files) {
+            byKind.computeIfAbsent(MediaKind.of(file.getName()).getAlbumKind(), kind -> new ArrayList<>()).add(file);
+        }
+
+        final List<List<FilePath>> groups = new ArrayList<>();
+        for (List<FilePath> kindFiles : byKind.values()) {
+            for (int i = 0; i < kindFiles.size(); i += MAX_MEDIA_GROUP_SIZE) {
+                groups.add(kindFiles.subList(i, Math.min(i + MAX_MEDIA_GROUP_SIZE, kindFiles.size())));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Send a file to all approved subscribers without waiting. The file is read and uploaded once,
+     * the other subscribers get it by the file_id Telegram returned for the upload, side by side,
+     * as many at once as the rate limits and the HTTP client allow. A file uploaded by an earlier build
+     * isn't uploaded at all, see {@link FileIdCache}. A file too large to upload is compressed or split
+     * into parts, see {@link FileSlice}.
+     *
+     * @return the aggregated result, completed once every subscriber was served
+     */
+    public CompletableFuture<DeliveryResult> telegramSendFileAsync(
+            FilePath filePath, String caption, Run<?, ?> run, TaskListener taskListener)
+            throws IOException, InterruptedException {
+
+        final String expandedCaption = caption != null
+                ? expandMessage(caption, CONFIG.getParseMode(), run, filePath, taskListener) : null;
+
+        final List<Long> chatIds = SUBSCRIBERS.getApprovedUsers().stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+        DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+        if (chatIds.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryResult.EMPTY);
+        }
+
+        final List<FileSlice> slices = FileSlice.plan(filePath, getMaxUploadBytes());
+        if (!slices.get(0).isWhole()) {
+            return sendSlices(chatIds, filePath, slices, expandedCaption);
+        }
+
+        final String cacheKey = FileIdCache.key(token, filePath);
+        final String cachedFileId = FileIdCache.getInstance().get(cacheKey);
+        return sendFirst(chatIds, 0, filePath, slices.get(0), expandedCaption, cacheKey, cachedFileId, new ArrayList<>());
+    }
+
+    /**
+     * Send the slices of a file one after another, so the chats get the parts in order.
+     * The caption goes with the first slice. Slices aren't cached, as they are rarely sent again.
+     * The compressed copy of the file the slices may be read from is deleted once they are sent.
+     */
+    private CompletableFuture<DeliveryResult> sendSlices(List<Long> chatIds, FilePath filePath, List<FileSlice> slices,
+                                                         String caption) {
+        if (slices.size() > 1 || !slices.get(0).isWhole()) {
+            LOG.log(Level.FINE, String.format("Sending %s as %s", filePath.getName(), slices));
+        }
+
+        CompletableFuture<DeliveryResult> sent = CompletableFuture.completedFuture(DeliveryResult.EMPTY);
+        for (int i = 0; i < slices.size(); i++) {
+            final FileSlice slice = slices.get(i);
+            final String sliceCaption = i == 0 ? caption : null;
+            if (i > 0) {
+                DeliveryMetrics.getInstance().onFanOut(chatIds.size());
+            }
+            sent = sent.thenCompose(sum -> sendFirst(chatIds, 0, filePath, slice, sliceCaption, null, null, new ArrayList<>())
+                    .thenApply(sum::plus));
+        }
+        return sent.whenComplete((result, error) -> FileSlice.dispose(filePath, slices));
+    }
+
+    /**
+     * Send the file to the chats one after another until it worked for one, then send it by its file_id
+     * to the remaining chats. The file is uploaded, unless Telegram has it already under the cached file_id.
+     * Moving on to the next chat only happens if sending failed because of the chat, e.g. a user who blocked
+     * the bot; any other failure fails all the remaining chats.
+     *
+     * @param cachedFileId  file_id of the file from the {@link FileIdCache}, null to upload it
+     * @param failed        results of the chats sending failed for so far
+     */
+    private CompletableFuture<DeliveryResult> sendFirst(List<Long> chatIds, int index, FilePath filePath, FileSlice slice,
+                                                        String caption, String cacheKey, String cachedFileId,
+                                                        List<CompletableFuture<DeliveryResult>> failed) {
+        if (index >= chatIds.size()) {
+            return DeliveryResult.allOf(failed);
+        }
+
+        final Long chatId = chatIds.get(index);
+        final CompletableFuture<Message> sent = new CompletableFuture<>();
+        if (cachedFileId != null) {
+            final String fileCaption = fileCaption(slice.getName(), caption);
+            sendWithRetries(chatId, slice.getName(),
+                    () -> sendFileByType(chatId, new InputFile(cachedFileId), slice.getName(), fileCaption), 1, sent);
+        } else {
+            uploadFile(chatId, filePath, slice, caption, sent);
+        }
+
+        return sent.handle((message, error) -> {
+            final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>(failed);
+            final List<Long> remaining = chatIds.subList(index + 1, chatIds.size());
+
+            if (error != null) {
+                final Throwable cause = unwrap(error);
+                if (cachedFileId != null && isWrongFileId(cause)) {
+                    // Stale, upload the file again
+                    FileIdCache.getInstance().remove(cacheKey);
+                    return sendFirst(chatIds, index, filePath, slice, caption, cacheKey, null, failed);
+                }
+
+                results.add(CompletableFuture.completedFuture(DeliveryResult.FAILED));
+                if (isChatError(cause)) {
+                    return sendFirst(chatIds, index + 1, filePath, slice, caption, cacheKey, cachedFileId, results);
+                }
+                remaining.forEach(id -> results.add(CompletableFuture.completedFuture(DeliveryResult.FAILED)));
+                return DeliveryResult.allOf(results);
+            }
+
+            results.add(CompletableFuture.completedFuture(DeliveryResult.SENT));
+            final String fileId = cachedFileId != null ? cachedFileId : getFileId(message);
+            if (fileId == null) {
+                // Nothing to reuse, upload to the next chat
+                return sendFirst(chatIds, index + 1, filePath, slice, caption, cacheKey, null, results);
+            }
+            if (cachedFileId == null) {
+                FileIdCache.getInstance().put(cacheKey, fileId);
+            }
+
+            for (Long id : remaining) {
+                results.add(sendFileByIdAsync(id, fileId, filePath, slice, caption));
+            }
+            return DeliveryResult.allOf(results);
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * Send a file Telegram already has by its file_id. Should Telegram refuse the id for this kind of file,
+     * the file is uploaded to the chat instead.
+     */
+    private CompletableFuture<DeliveryResult> sendFileByIdAsync(Long chatId, String fileId, FilePath filePath,
+                                                                FileSlice slice, String caption) {
+        final String fileCaption = fileCaption(slice.getName(), caption);
+        final CompletableFuture<Message> sent = new CompletableFuture<>();
+        sendWithRetries(chatId, slice.getName(),
+                () -> sendFileByType(chatId, new InputFile(fileId), slice.getName(), fileCaption), 1, sent);
+
+        return sent.handle((message, error) -> error == null
+                        ? CompletableFuture.completedFuture(DeliveryResult.SENT)
+                        : isWrongFileId(unwrap(error))
+                        ? sendFileAsync(chatId, filePath, slice, caption)
+                        : CompletableFuture.completedFuture(DeliveryResult.FAILED))
+                .thenCompose(result -> result);
+    }
+
+    /**
+     * Upload a media group to the chats one after another until it worked for one, then send it by the
+     * file_ids of the uploaded files to the remaining chats, like {@link #sendFirst} does for a single file.
+     */
+    private CompletableFuture<DeliveryResult> sendMediaGroupFirst(List<Long> chatIds, int index, List<FilePath> files,
+                                                                  String caption, List<CompletableFuture<DeliveryResult>> failed) {
+        if (index >= chatIds.size()) {
+            return DeliveryResult.allOf(failed);
+        }
+
+        final Long chatId = chatIds.get(index);
+        final String description = files.size() + " files";
+        final CompletableFuture<List<Message>> sent = new CompletableFuture<>();
+        sendWithRetries(chatId, description, () -> uploadMediaGroupOnce(chatId, files, caption), 1, sent);
+
+        return sent.handle((messages, error) -> {
+            final List<CompletableFuture<DeliveryResult>> results = new ArrayList<>(failed);
+            final List<Long> remaining = chatIds.subList(index + 1, chatIds.size());
+
+            if (error != null) {
+                results.add(CompletableFuture.completedFuture(DeliveryResult.FAILED));
+                if (isChatError(unwrap(error))) {
+                    return sendMediaGroupFirst(chatIds, index + 1, files, caption, results);
+                }
+                remaining.forEach(id -> results.add(CompletableFuture.completedFuture(DeliveryResult.FAILED)));
+                return DeliveryResult.allOf(results);
+            }
+
+            results.add(CompletableFuture.completedFuture(DeliveryResult.SENT));
+            final List<String> fileIds = messages.stream().map(TelegramBot::getFileId).collect(Collectors.toList());
+            if (fileIds.size() != files.size() || fileIds.contains(null)) {
+                // Nothing to reuse, upload to the next chat
+                return sendMediaGroupFirst(chatIds, index + 1, files, caption, results);
+            }
+
+            for (Long id : remaining) {
+                final CompletableFuture<List<Message>> sentById = new CompletableFuture<>();
+                sendWithRetries(id, description, () -> sendMediaGroup(id, files, fileIds, null, caption), 1, sentById);
+                results.add(sentById.handle((m, e) -> e == null ? DeliveryResult.SENT : DeliveryResult.FAILED));
+            }
+            return DeliveryResult.allOf(results);
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * Upload a media group, called once the call is due. The files are read side by side,
+     * as the request body is written.
+     */
+    private CompletableFuture<List<Message>> uploadMediaGroupOnce(Long chatId, List<FilePath> files, String caption)
+            throws TelegramApiException {
+        final List<TrackedInputStream> inputStreams = new ArrayList<>(files.size());
+        FilePath opening = null;
+        try {
+            for (FilePath file : files) {
+                opening = file;
+                inputStreams.add(new TrackedInputStream(file.read(), file.getName()));
+            }
+        } catch (IOException e) {
+            inputStreams.forEach(TelegramBot::closeQuietly);
+            throw new FileReadException("Unable to read the file: " + opening.getName(), e);
+        } catch (InterruptedException e) {
+            inputStreams.forEach(TelegramBot::closeQuietly);
+            Thread.currentThread().interrupt();
+            throw new FileReadException("Interrupted while opening the file: " + opening.getName(), e);
+        }
+
+        try {
+            return closeAfter(sendMediaGroup(chatId, files, null, new ArrayList<>(inputStreams), caption), inputStreams);
+        } catch (TelegramApiException | RuntimeException e) {
+            inputStreams.forEach(TelegramBot::closeQuietly);
+            throw e;
+        }
+    }
+
+    /**
+     * Send a media group, made of either the file_ids or the streams of the files
+     */
+    private CompletableFuture<List<Message>> sendMediaGroup(Long chatId, List<FilePath> files, List<String> fileIds,
+                                                            List<InputStream> inputStreams, String caption)
+            throws TelegramApiException {
+
+        // A caption too long for Telegram goes into a follow-up message instead
+        final String followUp = caption != null && caption.length() > MessageSplitter.CAPTION_LIMIT ? caption : null;
+        final String mediaCaption = followUp == null ? caption : null;
+
+        final List<InputMedia> medias = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            final String fileName = files.get(i).getName();
+            final InputMedia media = toInputMedia(MediaKind.of(fileName), fileIds != null ? fileIds.get(i) : null,
+                    inputStreams != null ? inputStreams.get(i) : null, fileName);
+            if (i == 0 && mediaCaption != null && !mediaCaption.isEmpty()) {
+                media.setCaption(mediaCaption);
+                media.setParseMode(CONFIG.getParseMode().forText(mediaCaption).getTelegramName());
+            }
+            medias.add(media);
+        }
+
+        final SendMediaGroup sendMediaGroup = SendMediaGroup.builder()
+                .chatId(chatId.toString())
+                .medias(medias)
+                .build();
+        final CompletableFuture<List<Message>> sent = DeliveryMetrics.getInstance()
+                .time("sendMediaGroup", getTelegramClient().executeAsync(sendMediaGroup));
+
+        if (followUp == null) {
+            return sent;
+        }
+        return sent.thenApply(messages -> {
+            enqueueText(chatId, followUp, CONFIG.getParseMode());
+            return messages;
+        });
+    }
+
+    private static InputMedia toInputMedia(MediaKind kind, String fileId, InputStream inputStream, String fileName) {
+        switch (kind) {
+            case PHOTO:
+                return fileId != null ? new InputMediaPhoto(fileId) : new InputMediaPhoto(inputStream, fileName);
+            case VIDEO:
+                return fileId != null ? new InputMediaVideo(fileId) : new InputMediaVideo(inputStream, fileName);
+            case AUDIO:
+                return fileId != null ? new InputMediaAudio(fileId) : new InputMediaAudio(inputStream, fileName);
+            default:
+                return fileId != null ? new InputMediaDocument(fileId) : new InputMediaDocument(inputStream, fileName);
+        }
+    }
+
+    /**
+     * Stream the file to one chat without waiting, retrying according to the {@link RetryPolicy}.
+     * The file is read anew for every attempt.
+     *
+     * @return the result for the chat; failures are logged and reported as {@link DeliveryResult#FAILED}
+     */
+    public CompletableFuture<DeliveryResult> sendFileAsync(Long chatId, FilePath filePath, String caption) {
+        return sendFileAsync(chatId, filePath, FileSlice.whole(filePath), caption);
+    }
+
+    private CompletableFuture<DeliveryResult> sendFileAsync(Long chatId, FilePath filePath, FileSlice slice, String caption) {
+        final CompletableFuture<Message> sent = new CompletableFuture<>();
+        uploadFile(chatId, filePath, slice, caption, sent);
+        return sent.handle((message, error) -> error == null ? DeliveryResult.SENT : DeliveryResult.FAILED);
+    }
+
+    /**
+     * The file_id of the file the message carries, null if there is none
+     */
+    private static String getFileId(Message message) {
+        if (message == null) {
+            return null;
+        }
+        if (message.hasDocument()) {
+            return message.getDocument().getFileId();
+        }
+        if (message.hasPhoto()) {
+            // The sizes come smallest first, the last one is the original
+            return message.getPhoto().get(message.getPhoto().size() - 1).getFileId();
+        }
+        if (message.hasVideo()) {
+            return message.getVideo().getFileId();
+        }
+        if (message.hasAudio()) {
+            return message.getAudio().getFileId();
+        }
+        if (message.hasAnimation()) {
+            return message.getAnimation().getFileId();
+        }
+        return null;
+    }
+
+    /**
+     * Whether the call failed because of the chat it was for, so it may work for another one
+     */
+    private static boolean isChatError(Throwable error) {
+        if (!(error instanceof TelegramApiRequestException)) {
+            return false;
+        }
+
+        final TelegramApiRequestException requestException = (TelegramApiRequestException) error;
+        final Integer errorCode = requestException.getErrorCode();
+        final String apiResponse = requestException.getApiResponse();
+        return errorCode != null && (errorCode == 403
+                || errorCode == 400 && apiResponse != null && apiResponse.toLowerCase(Locale.ROOT).contains("chat not found"));
+    }
+
+    /**
+     * Whether Telegram refused the file_id itself, e.g. an expired one or a photo id sent as a document.
+     * Other bad requests, like a caption it can't parse, would fail the same way once the file is uploaded.
+     */
+    private static boolean isWrongFileId(Throwable error) {
+        if (!(error instanceof TelegramApiRequestException)) {
+            return false;
+        }
+
+        final TelegramApiRequestException requestException = (TelegramApiRequestException) error;
+        final String apiResponse = requestException.getApiResponse();
+        if (!Integer.valueOf(400).equals(requestException.getErrorCode()) || apiResponse == null) {
+            return false;
+        }
+
+        final String description = apiResponse.toLowerCase(Locale.ROOT);
+        return WRONG_FILE_ID_DESCRIPTIONS.stream().anyMatch(description::contains);
+    }
+
+    private static boolean isSendableFile(FilePath filePath) throws IOException, InterruptedException {
         if (filePath == null || !filePath.exists()) {
             LOG.log(Level.WARNING, "FilePath is null or does not exist: " + filePath);
-            return;
+            return false;
         }
 
         if (filePath.isDirectory()) {
             LOG.log(Level.WARNING, "Path is a directory, not a file: " + filePath.getRemote());
-            return;
+            return false;
         }
 
-        // Send file directly using InputStream - no temp file needed
-        try (InputStream inputStream = filePath.read()) {
-            final InputFile inputFile = new InputFile(inputStream, filePath.getName());
-            
-            // Process emoji placeholders in caption and add file type emoji
-            String processedCaption = caption != null ? EmojiUtils.replaceEmojiPlaceholders(caption) : null;
-            String fileTypeEmoji = EmojiUtils.getFileTypeEmoji(filePath.getName());
-            
-            // Enhance caption with file type emoji if caption is provided
-            if (processedCaption != null && !processedCaption.isEmpty()) {
-                processedCaption = fileTypeEmoji + " " + processedCaption;
+        return true;
+    }
+
+    private void uploadFile(Long chatId, FilePath filePath, FileSlice slice, String caption, CompletableFuture<Message> result) {
+        final String fileCaption = fileCaption(slice.getName(), caption);
+        sendWithRetries(chatId, slice.getName(), () -> uploadFileOnce(chatId, filePath, slice, fileCaption), 1, result);
+    }
+
+    /**
+     * Make the call for the chat, retrying according to the {@link RetryPolicy}.
+     * The result is completed with the sent message, or exceptionally once the call is given up.
+     */
+    private <T> void sendWithRetries(Long chatId, String fileName, TelegramCall<T> call,
+                                     int attempts, CompletableFuture<T> result) {
+
+        executeAsync(chatId, call).whenComplete((message, error) -> {
+            if (error == null) {
+                result.complete(message);
+                return;
             }
-            
-            sendFileByType(chatId, inputFile, filePath.getName(), processedCaption);
-            
-            if (CONFIG != null && CONFIG.isShouldLogToConsole() && taskListener != null) {
-                taskListener.getLogger().println("Sent file to Telegram: " + filePath.getName());
+
+            final Throwable cause = unwrap(error);
+            final long delay = RetryPolicy.nextDelayMillis(attempts, cause);
+            if (delay < 0) {
+                LOG.log(Level.SEVERE, String.format(
+                        "TelegramBot: Error while sending file: %s to chat: %s", fileName, chatId), cause);
+                result.completeExceptionally(cause);
+                return;
             }
-        } catch (TelegramApiException e) {
-            LOG.log(Level.SEVERE, String.format(
-                    "TelegramBot: Error while sending file: %s to chat: %s", filePath.getName(), chatId), e);
+
+            LOG.log(Level.WARNING, String.format("TelegramBot: Error while sending file: %s to chat: %s, retrying in %d ms: %s",
+                    fileName, chatId, delay, cause.getMessage()));
+            DeliveryMetrics.getInstance().onRetry();
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> sendWithRetries(chatId, fileName, call, attempts + 1, result));
+        });
+    }
+
+    /**
+     * The caption with its emoji placeholders replaced and the file type emoji in front
+     */
+    private static String fileCaption(String fileName, String caption) {
+        String processedCaption = caption != null ? EmojiUtils.replaceEmojiPlaceholders(caption) : null;
+        String fileTypeEmoji = EmojiUtils.getFileTypeEmoji(fileName);
+
+        // Enhance caption with file type emoji if caption is provided
+        if (processedCaption != null && !processedCaption.isEmpty()) {
+            processedCaption = fileTypeEmoji + " " + processedCaption;
         }
+        return processedCaption;
     }
 
     /**
-     * Send a file to all approved subscribers
+     * Upload the slice of the file, called once the call is due
      */
-    public void telegramSendFile(FilePath filePath, String caption, Run<?, ?> run, TaskListener taskListener) 
-            throws IOException, InterruptedException {
-        
-        final String expandedCaption = caption != null ? expandMessage(caption, run, filePath, taskListener) : null;
-        
+    private CompletableFuture<Message> uploadFileOnce(Long chatId, FilePath filePath, FileSlice slice, String fileCaption)
+            throws TelegramApiException {
+        if (CONFIG.isUploadFromAgent() && filePath.isRemote()) {
+            return uploadFromAgent(chatId, filePath, slice, fileCaption);
+        }
+
+        // Send file directly using InputStream - no temp file needed.
+        // Opened only once the call is due, so waiting uploads don't hold streams open
+        final TrackedInputStream inputStream;
+        try {
+            inputStream = new TrackedInputStream(slice.open(filePath), slice.getName());
+        } catch (IOException e) {
+            throw new FileReadException("Unable to read the file: " + slice.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileReadException("Interrupted while opening the file: " + slice.getName(), e);
+        }
+
+        final InputFile inputFile = new InputFile(inputStream, slice.getName());
         try {
-            SUBSCRIBERS.getApprovedUsers().forEach(user -> {
-                try {
-                    telegramSendFile(user.getId(), filePath, expandedCaption, taskListener);
-                } catch (IOException | InterruptedException e) {
-                    LOG.log(Level.SEVERE, "Error sending file to user: " + user.getId(), e);
+            return closeAfter(sendFileByType(chatId, inputFile, slice.getName(), fileCaption),
+                    Collections.singletonList(inputStream));
+        } catch (TelegramApiException | RuntimeException e) {
+            closeQuietly(inputStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Close the streams of the files once the upload is done. If it failed while reading one of them,
+     * it fails with a {@link FileReadException} instead, the Telegram API is not to blame.
+     */
+    private static <T> CompletableFuture<T> closeAfter(CompletableFuture<T> upload, List<TrackedInputStream> inputStreams) {
+        return upload.handle((value, error) -> {
+            inputStreams.forEach(TelegramBot::closeQuietly);
+            if (error == null) {
+                return value;
+            }
+            for (TrackedInputStream inputStream : inputStreams) {
+                if (inputStream.getFailure() != null) {
+                    throw new CompletionException(new FileReadException(
+                            "Unable to read the file: " + inputStream.getName(), inputStream.getFailure()));
                 }
-            });
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Error while sending file to subscribers", e);
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        });
+    }
+
+    /**
+     * Upload the file straight from the agent it is on, see {@link AgentUpload}
+     */
+    private CompletableFuture<Message> uploadFromAgent(Long chatId, FilePath filePath, FileSlice slice, String caption) {
+        // A caption too long for Telegram goes into a follow-up message instead
+        final String followUp = caption != null && caption.length() > MessageSplitter.CAPTION_LIMIT ? caption : null;
+        final String fileCaption = followUp == null ? caption : null;
+
+        final MediaKind kind = MediaKind.of(slice.getName());
+        final AgentUpload upload = new AgentUpload(getApiUrl(), Secret.fromString(token), kind.getMethod(),
+                kind.getField(), chatId, slice, fileCaption, CONFIG.getParseMode().forText(fileCaption).getTelegramName(),
+                (int) TimeUnit.SECONDS.toMillis(CONFIG.getHttpConnectTimeoutSeconds()),
+                (int) TimeUnit.SECONDS.toMillis(CONFIG.getHttpReadTimeoutSeconds()),
+                CONFIG.getProxyHost(), CONFIG.getProxyPort());
+
+        final CompletableFuture<Message> sent = DeliveryMetrics.getInstance().time(kind.getMethod(),
+                CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return toMessage(slice.locate(filePath).act(upload));
+                    } catch (AgentUpload.FileReadFailure | ChannelClosedException e) {
+                        // The file is unreadable or the agent went away, either way the Telegram API is not to blame
+                        throw new CompletionException(new FileReadException(
+                                "Unable to read the file on the agent: " + slice.getName(), e));
+                    } catch (IOException | TelegramApiException e) {
+                        throw new CompletionException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(e);
+                    }
+                }, Computer.threadPoolForRemoting));
+
+        if (followUp == null) {
+            return sent;
+        }
+        return sent.thenApply(message -> {
+            enqueueText(chatId, followUp, CONFIG.getParseMode());
+            return message;
+        });
+    }
+
+    /**
+     * The sent message of a JSON answer of Telegram
+     *
+     * @throws TelegramApiRequestException if Telegram answered with an error
+     */
+    private static Message toMessage(String json) throws TelegramApiException {
+        final ApiResponse<Message> response;
+        try {
+            response = JSON.readValue(json, new TypeReference<ApiResponse<Message>>() {});
+        } catch (IOException e) {
+            throw new TelegramApiException("Unable to read the answer of the Telegram API", e);
+        }
+
+        if (!Boolean.TRUE.equals(response.getOk())) {
+            throw new TelegramApiRequestException("Error sending file", response);
+        }
+        return response.getResult();
+    }
+
+    private static long getMaxUploadBytes() {
+        return CONFIG.getMaxUploadMegabytes() * 1024L * 1024L;
+    }
+
+    private String getApiUrl() {
+        return telegramUrl.getSchema() + "://" + telegramUrl.getHost() + ":" + telegramUrl.getPort();
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Unable to close the file stream", e);
         }
     }
 
     /**
      * Helper method to send file using appropriate Telegram method based on file extension
      */
-    private void sendFileByType(Long chatId, InputFile inputFile, String fileName, String caption) throws TelegramApiException {
-        final String fileExtension = getFileExtension(fileName).toLowerCase();
-        
-        switch (fileExtension) {
-            case "jpg":
-            case "jpeg":
-            case "png":
-            case "gif":
-            case "webp":
-                sendPhoto(chatId, inputFile, caption);
+    private CompletableFuture<Message> sendFileByType(Long chatId, InputFile inputFile, String fileName, String caption)
+            throws TelegramApiException {
+        // A caption too long for Telegram goes into a follow-up message instead
+        final String followUp;
+        if (caption != null && caption.length() > MessageSplitter.CAPTION_LIMIT) {
+            followUp = caption;
+            caption = null;
+        } else {
+            followUp = null;
+        }
+        final ParseMode parseMode = CONFIG.getParseMode().forText(caption);
+
+        final CompletableFuture<Message> sent;
+        switch (MediaKind.of(fileName)) {
+            case PHOTO:
+                sent = sendPhoto(chatId, inputFile, caption, parseMode);
                 break;
-            case "mp4":
-            case "avi":
-            case "mov":
-            case "mkv":
-                sendVideo(chatId, inputFile, caption);
+            case VIDEO:
+                sent = sendVideo(chatId, inputFile, caption, parseMode);
                 break;
-            case "mp3":
-            case "wav":
-            case "flac":
-            case "ogg":
-            case "m4a":
-                sendAudio(chatId, inputFile, caption);
+            case AUDIO:
+                sent = sendAudio(chatId, inputFile, caption, parseMode);
                 break;
             default:
-                sendDocument(chatId, inputFile, caption);
+                sent = sendDocument(chatId, inputFile, caption, parseMode);
                 break;
         }
+
+        if (followUp == null) {
+            return sent;
+        }
+        return sent.thenApply(message -> {
+            enqueueText(chatId, followUp, CONFIG.getParseMode());
+            return message;
+        });
     }
 
-    private void sendDocument(Long chatId, InputFile document, String caption) throws TelegramApiException {
+    private CompletableFuture<Message> sendDocument(Long chatId, InputFile document, String caption, ParseMode parseMode)
+            throws TelegramApiException {
         final SendDocument.SendDocumentBuilder builder = SendDocument.builder()
                 .chatId(chatId.toString())
                 .document(document);
                 
         if (caption != null && !caption.isEmpty()) {
-            builder.caption(caption).parseMode("Markdown");
+            builder.caption(caption).parseMode(parseMode.getTelegramName());
         }
         
-        telegramClient.execute(builder.build());
+        return DeliveryMetrics.getInstance().time("sendDocument", getTelegramClient().executeAsync(builder.build()));
     }
 
-    private void sendPhoto(Long chatId, InputFile photo, String caption) throws TelegramApiException {
+    private CompletableFuture<Message> sendPhoto(Long chatId, InputFile photo, String caption, ParseMode parseMode)
+            throws TelegramApiException {
         final SendPhoto.SendPhotoBuilder builder = SendPhoto.builder()
                 .chatId(chatId.toString())
                 .photo(photo);
                 
         if (caption != null && !caption.isEmpty()) {
-            builder.caption(caption).parseMode("Markdown");
+            builder.caption(caption).parseMode(parseMode.getTelegramName());
         }
         
-        telegramClient.execute(builder.build());
+        return DeliveryMetrics.getInstance().time("sendPhoto", getTelegramClient().executeAsync(builder.build()));
     }
 
-    private void sendVideo(Long chatId, InputFile video, String caption) throws TelegramApiException {
+    private CompletableFuture<Message> sendVideo(Long chatId, InputFile video, String caption, ParseMode parseMode)
+            throws TelegramApiException {
         final SendVideo.SendVideoBuilder builder = SendVideo.builder()
                 .chatId(chatId.toString())
                 .video(video);
                 
         if (caption != null && !caption.isEmpty()) {
-            builder.caption(caption).parseMode("Markdown");
+            builder.caption(caption).parseMode(parseMode.getTelegramName());
         }
         
-        telegramClient.execute(builder.build());
+        return DeliveryMetrics.getInstance().time("sendVideo", getTelegramClient().executeAsync(builder.build()));
     }
 
-    private void sendAudio(Long chatId, InputFile audio, String caption) throws TelegramApiException {
+    private CompletableFuture<Message> sendAudio(Long chatId, InputFile audio, String caption, ParseMode parseMode)
+            throws TelegramApiException {
         final SendAudio.SendAudioBuilder builder = SendAudio.builder()
                 .chatId(chatId.toString())
                 .audio(audio);
                 
         if (caption != null && !caption.isEmpty()) {
-            builder.caption(caption).parseMode("Markdown");
+            builder.caption(caption).parseMode(parseMode.getTelegramName());
         }
         
-        telegramClient.execute(builder.build());
+        return DeliveryMetrics.getInstance().time("sendAudio", getTelegramClient().executeAsync(builder.build()));
+    }
+
+    /**
+     * A single asynchronous Telegram API call
+     */
+    private interface TelegramCall<T> {
+        CompletableFuture<T> call() throws TelegramApiException;
+    }
+
+    /**
+     * Every Telegram API call goes through here, so the rate limits are kept
+     * and no call is made while the circuit breaker is open.
+     * Nothing blocks: the call is started once its rate limit slot is due.
+     */
+    private <T> CompletableFuture<T> executeAsync(Long chatId, TelegramCall<T> call) {
+        final RateLimiter rateLimiter = RateLimiter.getInstance();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // The slot of the bot is taken once the chat's is due, so a chat which has to wait holds up no other chat
+        after(rateLimiter.reserveChat(chatId), () -> after(rateLimiter.reserveGlobal(), () -> {
+            final CircuitBreaker circuitBreaker = CircuitBreaker.getInstance();
+            if (!circuitBreaker.tryAcquirePermission()) {
+                result.completeExceptionally(new CircuitOpenException());
+                return;
+            }
+
+            final CompletableFuture<T> response;
+            try {
+                response = call.call();
+            } catch (TelegramApiException | RuntimeException e) {
+                circuitBreaker.onFailure(e);
+                DeliveryMetrics.getInstance().onFailure(e);
+                result.completeExceptionally(e);
+                return;
+            }
+
+            response.whenComplete((value, error) -> {
+                if (error == null) {
+                    circuitBreaker.onSuccess();
+                    DeliveryMetrics.getInstance().onSuccess();
+                    result.complete(value);
+                } else {
+                    final Throwable cause = unwrap(error);
+                    circuitBreaker.onFailure(cause);
+                    DeliveryMetrics.getInstance().onFailure(cause);
+                    result.completeExceptionally(cause);
+                }
+            });
+        }));
+        return result;
     }
 
-    private String getFileExtension(String fileName) {
-        if (fileName == null || fileName.isEmpty()) {
-            return "";
+    /**
+     * Run the task after the delay, right away without one
+     */
+    private static void after(long delayNanos, Runnable task) {
+        if (delayNanos > 0) {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(task);
+        } else {
+            task.run();
         }
-        
-        int lastDotIndex = fileName.lastIndexOf('.');
-        if (lastDotIndex == -1 || lastDotIndex == fileName.length() - 1) {
-            return "";
+    }
+
+    /**
+     * Wait for an asynchronous call, for the blocking API
+     */
+    private static <T> T await(CompletableFuture<T> future) throws TelegramApiException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted while waiting for the Telegram API", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof TelegramApiException) {
+                throw (TelegramApiException) cause;
+            }
+            throw new TelegramApiException(cause);
         }
-        
-        return fileName.substring(lastDotIndex + 1);
+    }
+
+    /**
+     * Wait for a result which never completes exceptionally
+     */
+    private static DeliveryResult awaitResult(CompletableFuture<DeliveryResult> future) throws InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException(unwrap(e));
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
     }
 
     @Override
@@ -290,6 +1250,7 @@ public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
             return;
         }
 
+        final long start = System.nanoTime();
         if (update.hasMessage() && update.getMessage().hasText()) {
             Message message = update.getMessage();
             String messageText = message.getText();
@@ -301,14 +1262,15 @@ public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
                 handleNonCommandUpdate(update);
             }
         }
+        DeliveryMetrics.getInstance().onUpdate(System.nanoTime() - start);
     }
 
     private void handleCommand(String commandText, Chat chat, Message message) {
-        String[] parts = commandText.split(" ");
-        String command = parts[0].toLowerCase();
-        
+        final CommandLine commandLine = CommandLine.parse(commandText);
+        final String[] parts = commandLine.getParts();
+
         // Handle commands manually
-        switch (command) {
+        switch (commandLine.getCommand()) {
             case "/start":
                 new StartCommand().execute(this, message.getFrom(), chat, parts);
                 break;
@@ -366,6 +1328,14 @@ public class TelegramBot implements LongPollingSingleThreadUpdateConsumer {
         return botUsername;
     }
 
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    public TelegramUrl getTelegramUrl() {
+        return telegramUrl;
+    }
+
     @Override
     public String toString() {
         return "TelegramBot{" + token + "}";
@@ -1,10 +1,15 @@
 package jenkinsci.plugins.telegrambot.telegram;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jenkins.model.GlobalConfiguration;
 import jenkinsci.plugins.telegrambot.TelegramBotGlobalConfiguration;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryJournal;
+import jenkinsci.plugins.telegrambot.telegram.delivery.DeliveryQueue;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.longpolling.util.DefaultGetUpdatesGenerator;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
@@ -21,6 +26,7 @@ public class TelegramBotRunner {
     private TelegramBot bot;
     private String botToken;
     private String botName;
+    private String apiBaseUrl;
 
     public synchronized static TelegramBotRunner getInstance() {
         if (instance == null) {
@@ -30,12 +36,20 @@ public class TelegramBotRunner {
     }
 
     public void runBot(String name, String token) {
+        runBot(name, token, null);
+    }
+
+    /**
+     * @param baseUrl  base URL of the Bot API, null or empty for the Telegram one
+     */
+    public void runBot(String name, String token, String baseUrl) {
         if (token == null || token.isEmpty() || name == null || name.isEmpty()) {
             LOG.log(Level.WARNING, "Bot name or token is empty, not starting bot");
             return;
         }
         botName = name;
         botToken = token;
+        apiBaseUrl = baseUrl != null && !baseUrl.isEmpty() ? baseUrl : null;
         executor.submit(startBotTask);
     }
 
@@ -46,16 +60,33 @@ public class TelegramBotRunner {
     private final Runnable startBotTask = () -> {
         if (bot == null
                 || !bot.getBotToken().equals(botToken)
-                || !bot.getBotUsername().equals(botName)) {
-            bot = new TelegramBot(botToken, botName);
+                || !bot.getBotUsername().equals(botName)
+                || !Objects.equals(bot.getApiBaseUrl(), apiBaseUrl)) {
+            try {
+                bot = new TelegramBot(botToken, botName, apiBaseUrl);
+            } catch (IllegalArgumentException e) {
+                LOG.log(Level.SEVERE, "Invalid Bot API URL, not starting bot", e);
+                return;
+            }
             LOG.log(Level.INFO, "Bot was created");
         } else {
             LOG.log(Level.INFO, "There is no reason for bot recreating");
             return;
         }
         createBotSession();
+        replayOutbox();
     };
 
+    /**
+     * Send the messages which were still pending when Jenkins stopped
+     */
+    private void replayOutbox() {
+        DeliveryJournal journal = DeliveryJournal.getInstance();
+        if (journal != null) {
+            journal.replay(DeliveryQueue.getInstance());
+        }
+    }
+
     private void createBotSession() {
         if (botsApplication != null) {
             LOG.info("Stopping previous bot session");
@@ -67,8 +98,10 @@ public class TelegramBotRunner {
         }
 
         try {
-            botsApplication = new TelegramBotsLongPollingApplication();
-            botsApplication.registerBot(botToken, bot);
+            // Long polling shares the connection pool of the plugin's HTTP client
+            botsApplication = new TelegramBotsLongPollingApplication(ObjectMapper::new,
+                    TelegramHttpClient.getInstance()::newLongPollingClient);
+            botsApplication.registerBot(botToken, bot::getTelegramUrl, new DefaultGetUpdatesGenerator(), bot);
             LOG.log(Level.INFO, "New bot session was registered");
         } catch (TelegramApiException e) {
             LOG.log(Level.SEVERE, "Telegram API error", e);
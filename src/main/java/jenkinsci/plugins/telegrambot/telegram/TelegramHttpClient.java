@@ -0,0 +1,141 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.telegram.telegrambots.meta.TelegramUrl;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The one OkHttpClient of the plugin, shared by sending and long polling.
+ * It outlives the bots, so pooled connections are reused across bot re-registrations.
+ * <p>
+ * Changing the settings builds a new client; the connection pool is only replaced
+ * when its own settings change.
+ */
+public class TelegramHttpClient {
+    private static final Logger LOG = Logger.getLogger(TelegramHttpClient.class.getName());
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 10;
+    public static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    public static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    public static final int DEFAULT_READ_TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+
+    /**
+     * getUpdates holds the request open for up to 50 seconds, the read timeout has to be longer
+     */
+    private static final int LONG_POLLING_READ_TIMEOUT_SECONDS = 75;
+
+    private static final TelegramHttpClient INSTANCE = new TelegramHttpClient();
+
+    private volatile OkHttpClient client;
+    private List<Object> settings = Collections.emptyList();
+    private List<Object> poolSettings = Collections.emptyList();
+    private int readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+
+    private TelegramHttpClient() {
+        configure(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS,
+                DEFAULT_READ_TIMEOUT_SECONDS, DEFAULT_MAX_REQUESTS_PER_HOST, true, null, 0);
+    }
+
+    public static TelegramHttpClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Apply new transport settings; a no-op when nothing changed
+     *
+     * @param proxyHost  HTTP proxy to connect through, null or empty for the JVM default
+     */
+    public synchronized void configure(int maxIdleConnections, int keepAliveSeconds,
+                                       int connectTimeoutSeconds, int readTimeoutSeconds,
+                                       int maxRequestsPerHost, boolean http2,
+                                       String proxyHost, int proxyPort) {
+        final List<Object> newSettings = Arrays.asList(maxIdleConnections, keepAliveSeconds,
+                connectTimeoutSeconds, readTimeoutSeconds, maxRequestsPerHost, http2, proxyHost, proxyPort);
+        if (newSettings.equals(settings)) {
+            return;
+        }
+
+        final List<Object> newPoolSettings = Arrays.asList(maxIdleConnections, keepAliveSeconds);
+        final OkHttpClient.Builder builder = client != null && newPoolSettings.equals(poolSettings)
+                ? client.newBuilder()
+                : new OkHttpClient.Builder()
+                        .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS));
+
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequestsPerHost));
+
+        builder.dispatcher(dispatcher)
+                .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .protocols(http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .proxy(proxyHost != null && !proxyHost.isEmpty()
+                        ? new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxyHost, proxyPort))
+                        : null);
+
+        client = builder.build();
+        settings = newSettings;
+        poolSettings = newPoolSettings;
+        this.readTimeoutSeconds = readTimeoutSeconds;
+        LOG.log(Level.FINE, "Telegram HTTP client configured: {0}", newSettings);
+    }
+
+    /**
+     * The client the API calls are sent with; it's replaced when the settings change
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Bot API location for the given base URL, e.g. {@code http://localhost:8081}
+     *
+     * @param baseUrl  null or empty for the Telegram Bot API
+     * @throws IllegalArgumentException if the URL has no http(s) scheme or no host
+     */
+    public static TelegramUrl toTelegramUrl(String baseUrl) {
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            return TelegramUrl.DEFAULT_URL;
+        }
+
+        final URI uri = URI.create(baseUrl.trim());
+        final String scheme = uri.getScheme();
+        if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            throw new IllegalArgumentException("Not an http(s) URL: " + baseUrl);
+        }
+
+        final int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(scheme) ? 443 : 80;
+        return TelegramUrl.builder()
+                .schema(scheme.toLowerCase())
+                .host(uri.getHost())
+                .port(port)
+                .build();
+    }
+
+    /**
+     * A client for getUpdates, sharing the connection pool but with its own dispatcher
+     * and a read timeout longer than the long polling timeout
+     */
+    public synchronized OkHttpClient newLongPollingClient() {
+        return client.newBuilder()
+                .dispatcher(new Dispatcher())
+                .readTimeout(Math.max(readTimeoutSeconds, LONG_POLLING_READ_TIMEOUT_SECONDS), TimeUnit.SECONDS)
+                .build();
+    }
+}
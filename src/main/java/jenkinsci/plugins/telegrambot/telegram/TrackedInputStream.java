@@ -0,0 +1,64 @@
+package jenkinsci.plugins.telegrambot.telegram;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Remembers the first error reading a file being uploaded, so a failed upload can tell
+ * a file it couldn't read from a failure of the Telegram API
+ */
+final class TrackedInputStream extends FilterInputStream {
+    private final String name;
+    private volatile IOException failure;
+
+    TrackedInputStream(InputStream in, String name) {
+        super(in);
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * The first error reading the file, null if there was none
+     */
+    IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            return super.read();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            return super.read(b, off, len);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    private IOException failed(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        return e;
+    }
+}
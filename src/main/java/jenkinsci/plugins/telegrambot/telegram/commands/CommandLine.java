@@ -0,0 +1,38 @@
+package jenkinsci.plugins.telegrambot.telegram.commands;
+
+import java.util.Locale;
+
+/**
+ * A bot command as typed by the user, e.g. {@code /sub} or {@code /status now}
+ */
+public final class CommandLine {
+    private final String command;
+    private final String[] parts;
+
+    private CommandLine(String command, String[] parts) {
+        this.command = command;
+        this.parts = parts;
+    }
+
+    /**
+     * Split the text into the command and its arguments
+     */
+    public static CommandLine parse(String text) {
+        final String[] parts = text.split(" ");
+        return new CommandLine(parts[0].toLowerCase(Locale.ROOT), parts);
+    }
+
+    /**
+     * The lower-cased command, including the leading slash
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * All the words of the text, the command being the first one
+     */
+    public String[] getParts() {
+        return parts;
+    }
+}
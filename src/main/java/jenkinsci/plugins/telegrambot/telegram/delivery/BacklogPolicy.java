@@ -0,0 +1,16 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+/**
+ * What the delivery queue does with messages while the {@link CircuitBreaker} is open.
+ */
+public enum BacklogPolicy {
+    /**
+     * Keep them in memory and send them once the Telegram API is reachable again
+     */
+    PARK,
+
+    /**
+     * Drop them
+     */
+    DROP
+}
@@ -0,0 +1,171 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling the Telegram API while it looks unavailable, so sends fail fast instead of
+ * waiting for the HTTP timeouts.
+ * <p>
+ * The breaker is closed while fewer than half of the last calls failed. Then it opens: no call
+ * is made for a while. After that it is half-open and lets a single probe call through, which either
+ * closes it again or opens it for another while.
+ * Only errors hinting at an outage count as failures: network errors, timeouts and 5xx responses.
+ * A 4xx response, including 429, means the API is up, and a file which couldn't be read isn't counted at all.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 10;
+    private static final int FAILURE_RATE_PERCENT = 50;
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final CircuitBreaker INSTANCE = new CircuitBreaker();
+
+    /**
+     * Outcomes of the last calls, true for a failure
+     */
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public static CircuitBreaker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Ask for a permission to make a call; when it was given, the outcome has to be reported
+     * with {@link #onSuccess()} or {@link #onFailure(Throwable)}
+     */
+    public synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < OPEN_NANOS) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(Throwable e) {
+        if (e instanceof FileReadException) {
+            // The call may not even have reached the Telegram API, it tells nothing either way
+            probeInFlight = false;
+            return;
+        }
+        if (!isOutage(e)) {
+            onSuccess();
+            return;
+        }
+
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+
+        record(true);
+        if (windowCalls >= MIN_CALLS && windowFailures * 100 >= windowCalls * FAILURE_RATE_PERCENT) {
+            open();
+        }
+    }
+
+    /**
+     * Whether calls are currently refused without a probe being due
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAt < OPEN_NANOS;
+    }
+
+    /**
+     * Milliseconds until the breaker lets a probe call through, 0 if it does already
+     */
+    public synchronized long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(OPEN_NANOS - (System.nanoTime() - openedAt)));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Human readable state for the configuration page
+     */
+    public synchronized String getStatus() {
+        switch (state) {
+            case OPEN:
+                return String.format("OPEN, next attempt in %d s", TimeUnit.MILLISECONDS.toSeconds(getRemainingOpenMillis()));
+            case HALF_OPEN:
+                return "HALF_OPEN, probing the Telegram API";
+            case CLOSED:
+            default:
+                return String.format("CLOSED, %d of the last %d calls failed", windowFailures, windowCalls);
+        }
+    }
+
+    static boolean isOutage(Throwable e) {
+        if (e instanceof TelegramApiRequestException) {
+            final Integer errorCode = ((TelegramApiRequestException) e).getErrorCode();
+            return errorCode != null && errorCode >= 500;
+        }
+        return RetryPolicy.isRetryable(e);
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == WINDOW_SIZE) {
+            if (window[windowIndex]) windowFailures--;
+        } else {
+            windowCalls++;
+        }
+
+        window[windowIndex] = failure;
+        if (failure) windowFailures++;
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probeInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+}
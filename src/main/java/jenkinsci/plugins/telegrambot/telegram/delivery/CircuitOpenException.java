@@ -0,0 +1,14 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+/**
+ * Thrown instead of calling the Telegram API while the {@link CircuitBreaker} is open
+ */
+public class CircuitOpenException extends TelegramApiException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException() {
+        super("Telegram API looks unavailable, not sending until it recovers");
+    }
+}
@@ -0,0 +1,153 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which texts were recently sent to which chats, so byte-identical notifications
+ * (flapping jobs, retried stages) are sent only once within the window.
+ * <p>
+ * Only a 64-bit hash of the text is kept per chat. The cache holds a bounded number of entries,
+ * the oldest ones go first, and entries expire once the window is over.
+ */
+public class DeduplicationCache {
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final DeduplicationCache INSTANCE = new DeduplicationCache();
+
+    private final LongAdder suppressed = new LongAdder();
+    private volatile long windowNanos;
+
+    /**
+     * Expiry time by key, in insertion order, so the oldest entries come first
+     */
+    private final LinkedHashMap<Key, Long> entries = new LinkedHashMap<Key, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static final class Key {
+        final long chatId;
+        final long hash;
+
+        Key(long chatId, long hash) {
+            this.chatId = chatId;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return chatId == key.chatId && hash == key.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(chatId * 31 + hash);
+        }
+    }
+
+    public static DeduplicationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param windowSeconds  how long a sent text suppresses the same text to the same chat, 0 disables the cache
+     */
+    public void setWindowSeconds(long windowSeconds) {
+        windowNanos = TimeUnit.SECONDS.toNanos(Math.max(0, windowSeconds));
+        if (windowNanos == 0) {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * Check whether the text was sent to the chat within the window, and remember it if it wasn't.
+     * The text counts as sent from now on, so the same text enqueued meanwhile is suppressed too;
+     * call {@link #forget} should it not be sent after all.
+     *
+     * @return true if the text has to be suppressed
+     */
+    public boolean isDuplicate(Long chatId, String text) {
+        final long window = windowNanos;
+        if (window == 0 || chatId == null || text == null) {
+            return false;
+        }
+
+        final Key key = new Key(chatId, hash(text));
+        final long now = System.nanoTime();
+
+        synchronized (entries) {
+            evictExpired(now);
+
+            final Long expiry = entries.get(key);
+            if (expiry != null && expiry - now > 0) {
+                suppressed.increment();
+                return true;
+            }
+
+            // Removed first, so the entry moves to the end of the insertion order
+            entries.remove(key);
+            entries.put(key, now + window);
+            return false;
+        }
+    }
+
+    /**
+     * Forget the text was sent to the chat, because sending it failed or it was never enqueued
+     */
+    public void forget(Long chatId, String text) {
+        if (chatId == null || text == null) {
+            return;
+        }
+
+        synchronized (entries) {
+            entries.remove(new Key(chatId, hash(text)));
+        }
+    }
+
+    /**
+     * Number of notifications suppressed since Jenkins started
+     */
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    private void evictExpired(long now) {
+        // The entries expire in insertion order as long as the window doesn't change. An entry outliving
+        // a window shortened since is only removed after the ones before it, but checked on lookup
+        final Iterator<Long> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next() - now <= 0) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units of the text
+     */
+    static long hash(String text) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,443 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the messages waiting in the {@link DeliveryQueue}, so they survive a Jenkins restart.
+ * <p>
+ * The journal is a sequence of segment files under JENKINS_HOME. Every enqueued message is appended as
+ * an enqueue record and every finished one (sent, failed or dropped) as an acknowledge record.
+ * Writes are buffered and forced to disk by a background thread a few times per second, so enqueueing
+ * costs no fsync of its own. Segments are rolled when they grow large; a segment is deleted once it and
+ * all the older ones hold no pending message, and the pending messages of old segments are copied to the
+ * active one when too many segments pile up.
+ * <p>
+ * On startup the pending messages of the previous run are read back and replayed into the queue
+ * once the bot is up, see {@link #replay(DeliveryQueue)}.
+ */
+public class DeliveryJournal {
+    private static final Logger LOG = Logger.getLogger(DeliveryJournal.class.getName());
+
+    private static final String DIRECTORY = "telegram-outbox";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final long MAX_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_SEGMENTS = 4;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private static final byte ENQUEUE = 'E';
+    /**
+     * An enqueue record with the name of the parse mode after the chat id, for any mode but Markdown
+     */
+    private static final byte ENQUEUE_FORMATTED = 'F';
+    private static final byte ACKNOWLEDGE = 'A';
+
+    private static DeliveryJournal instance;
+    private static boolean openFailed;
+
+    private final File directory;
+    private final AtomicLong ids = new AtomicLong();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TelegramBot outbox flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Messages of the previous run, waiting to be replayed
+     */
+    private Map<Long, OutboundMessage> recovered;
+    private List<File> recoveredSegments;
+
+    /**
+     * Segments written by this process, oldest first; the last one is the active segment
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Entry> pending = new HashMap<>();
+    private long nextSegmentSequence;
+    private BufferedOutputStream out;
+    private FileOutputStream outFile;
+    private boolean dirty;
+
+    private static final class Segment {
+        final long sequence;
+        final File file;
+        long bytes;
+        int live;
+
+        Segment(long sequence, File file) {
+            this.sequence = sequence;
+            this.file = file;
+        }
+    }
+
+    private static final class Entry {
+        final OutboundMessage message;
+        Segment segment;
+
+        Entry(OutboundMessage message, Segment segment) {
+            this.message = message;
+            this.segment = segment;
+        }
+    }
+
+    DeliveryJournal(File directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+
+        recover();
+        rollSegment();
+
+        flusher.scheduleWithFixedDelay(this::maintain,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the journal under JENKINS_HOME, or null if it could not be opened
+     */
+    public synchronized static DeliveryJournal getInstance() {
+        if (instance == null && !openFailed) {
+            try {
+                instance = new DeliveryJournal(new File(Jenkins.get().getRootDir(), DIRECTORY));
+            } catch (IOException e) {
+                openFailed = true;
+                LOG.log(Level.SEVERE, "Unable to open the outbox, queued messages will not survive a restart", e);
+            }
+        }
+        return instance;
+    }
+
+    @Terminator
+    public synchronized static void shutdown() {
+        if (instance != null) {
+            instance.close();
+        }
+    }
+
+    /**
+     * Record the message as pending; it is acknowledged automatically once its result is complete
+     */
+    void append(OutboundMessage message) throws IOException {
+        track(ids.incrementAndGet(), message);
+    }
+
+    private void track(long id, OutboundMessage message) throws IOException {
+        synchronized (this) {
+            write(encodeEnqueue(id, message));
+            final Segment segment = segments.getLast();
+            segment.live++;
+            pending.put(id, new Entry(message, segment));
+        }
+
+        message.getResult().whenComplete((result, error) -> acknowledge(id));
+    }
+
+    private synchronized void acknowledge(long id) {
+        final Entry entry = pending.remove(id);
+        if (entry == null) {
+            return;
+        }
+
+        try {
+            write(ByteBuffer.allocate(9).put(ACKNOWLEDGE).putLong(id));
+            entry.segment.live--;
+            deleteFinishedSegments();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write to the outbox", e);
+        }
+    }
+
+    /**
+     * Enqueue the messages left over from the previous run. Only the first call does something.
+     */
+    public void replay(DeliveryQueue queue) {
+        final Map<Long, OutboundMessage> messages;
+        final List<File> files;
+        synchronized (this) {
+            messages = recovered;
+            files = recoveredSegments;
+            recovered = null;
+            recoveredSegments = null;
+        }
+        if (messages == null) {
+            return;
+        }
+
+        if (!messages.isEmpty()) {
+            LOG.log(Level.INFO, "Replaying {0} pending Telegram messages from the outbox", messages.size());
+        }
+
+        // Move the messages to the active segment under their own ids before enqueueing any of them,
+        // so a replay cut short leaves each of them recorded once, and the old segments can go
+        try {
+            synchronized (this) {
+                for (Map.Entry<Long, OutboundMessage> entry : messages.entrySet()) {
+                    track(entry.getKey(), entry.getValue());
+                }
+                flush();
+            }
+            for (File file : files) {
+                deleteSegmentFile(file);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to move the pending messages to the active outbox segment", e);
+        }
+
+        try {
+            for (OutboundMessage message : messages.values()) {
+                try {
+                    queue.enqueue(message, false);
+                } catch (RejectedExecutionException e) {
+                    LOG.log(Level.WARNING, "Unable to replay the message: " + message, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The messages not enqueued yet are still pending in the journal
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void close() {
+        flusher.shutdown();
+        try {
+            flush();
+            outFile.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to close the outbox", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+        final List<File> segmentFiles = files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+        segmentFiles.sort(Comparator.comparingLong(DeliveryJournal::segmentSequence));
+
+        final Map<Long, OutboundMessage> messages = new LinkedHashMap<>();
+        long maxId = 0;
+        for (File file : segmentFiles) {
+            maxId = Math.max(maxId, readSegment(file, messages));
+            nextSegmentSequence = Math.max(nextSegmentSequence, segmentSequence(file) + 1);
+        }
+
+        ids.set(maxId);
+        recovered = messages;
+        recoveredSegments = segmentFiles;
+    }
+
+    /**
+     * Read the records of one segment, stopping at the first torn or corrupt record
+     *
+     * @return the highest id found
+     */
+    private static long readSegment(File file, Map<Long, OutboundMessage> messages) throws IOException {
+        long maxId = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Invalid record length: " + length);
+                }
+
+                final byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksum(payload, 0, length) != checksum) {
+                    throw new IOException("Record checksum mismatch");
+                }
+
+                final ByteBuffer record = ByteBuffer.wrap(payload);
+                final byte type = record.get();
+                final long id = record.getLong();
+                maxId = Math.max(maxId, id);
+
+                if (type == ENQUEUE || type == ENQUEUE_FORMATTED) {
+                    final long chatId = record.getLong();
+                    final ParseMode parseMode = type == ENQUEUE ? ParseMode.MARKDOWN : readParseMode(record);
+                    final String text = new String(payload, record.position(), record.remaining(), StandardCharsets.UTF_8);
+                    messages.put(id, new OutboundMessage(chatId, text, parseMode));
+                } else {
+                    messages.remove(id);
+                }
+            }
+        } catch (EOFException e) {
+            // The normal end of the segment, or a torn write of the last record
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Outbox segment is damaged, ignoring the rest of it: " + file, e);
+        }
+        return maxId;
+    }
+
+    private static ParseMode readParseMode(ByteBuffer record) {
+        final byte[] name = new byte[record.get()];
+        record.get(name);
+        try {
+            return ParseMode.valueOf(new String(name, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            // A mode this version doesn't know, the text is still worth sending
+            return ParseMode.PLAIN;
+        }
+    }
+
+    private static ByteBuffer encodeEnqueue(long id, OutboundMessage message) {
+        final byte[] text = message.getText().getBytes(StandardCharsets.UTF_8);
+        if (message.getParseMode() == ParseMode.MARKDOWN) {
+            return ByteBuffer.allocate(17 + text.length)
+                    .put(ENQUEUE)
+                    .putLong(id)
+                    .putLong(message.getChatId())
+                    .put(text);
+        }
+        final byte[] parseMode = message.getParseMode().name().getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(18 + parseMode.length + text.length)
+                .put(ENQUEUE_FORMATTED)
+                .putLong(id)
+                .putLong(message.getChatId())
+                .put((byte) parseMode.length)
+                .put(parseMode)
+                .put(text);
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        final byte[] payload = record.array();
+        final int length = record.position();
+
+        final Segment active = segments.getLast();
+        if (active.bytes > 0 && active.bytes + length + 8 > MAX_SEGMENT_BYTES) {
+            rollSegment();
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(8)
+                .putInt(length)
+                .putInt(checksum(payload, 0, length));
+        out.write(header.array());
+        out.write(payload, 0, length);
+        segments.getLast().bytes += length + 8;
+        dirty = true;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private void rollSegment() throws IOException {
+        if (out != null) {
+            flush();
+            outFile.close();
+        }
+
+        final long sequence = nextSegmentSequence++;
+        final Segment segment = new Segment(sequence, new File(directory, SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX));
+        outFile = new FileOutputStream(segment.file, true);
+        out = new BufferedOutputStream(outFile, 64 * 1024);
+        segments.addLast(segment);
+    }
+
+    /**
+     * Copy the pending messages of the older segments to the active one, so the older ones can go
+     */
+    private void compact() throws IOException {
+        final Segment active = segments.getLast();
+        for (Map.Entry<Long, Entry> mapEntry : pending.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            if (entry.segment.sequence < active.sequence) {
+                write(encodeEnqueue(mapEntry.getKey(), entry.message));
+                entry.segment.live--;
+                // The write may have rolled over to a new segment
+                entry.segment = segments.getLast();
+                entry.segment.live++;
+            }
+        }
+        // The copies have to be on disk before the originals go
+        flush();
+        deleteFinishedSegments();
+    }
+
+    /**
+     * Delete the oldest segments without pending messages. Segments are only deleted oldest first,
+     * because a segment may hold the acknowledge records of messages from the older ones.
+     */
+    private void deleteFinishedSegments() {
+        while (segments.size() > 1 && segments.getFirst().live == 0) {
+            deleteSegmentFile(segments.removeFirst().file);
+        }
+    }
+
+    private static void deleteSegmentFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to delete the outbox segment: " + file, e);
+        }
+    }
+
+    /**
+     * Group commit: one fsync for everything written since the last flush
+     */
+    private synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        out.flush();
+        outFile.getChannel().force(false);
+        dirty = false;
+    }
+
+    /**
+     * Periodic flush, compacting first when too many segments piled up
+     */
+    synchronized void maintain() {
+        try {
+            if (segments.size() > MAX_SEGMENTS) {
+                compact();
+            }
+            flush();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to flush the outbox", e);
+        }
+    }
+
+    private static long segmentSequence(File file) {
+        final String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
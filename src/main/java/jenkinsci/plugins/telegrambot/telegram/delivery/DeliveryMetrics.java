@@ -0,0 +1,142 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import net.sf.json.JSONObject;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the Telegram API calls and of the consumed updates.
+ * <p>
+ * Everything is recorded with {@link LongAdder}s and {@link LatencyHistogram}s, so recording
+ * neither locks nor allocates once a method was seen. Latencies are kept in microseconds.
+ */
+public class DeliveryMetrics {
+    private static final DeliveryMetrics INSTANCE = new DeliveryMetrics();
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+    private final LatencyHistogram fanOutSizes = new LatencyHistogram();
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder tooManyRequests = new LongAdder();
+    private final LongAdder forbidden = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+
+    public static DeliveryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Count the API call until the response completes and record its latency under the method name
+     *
+     * @return the given response
+     */
+    public <T> CompletableFuture<T> time(String method, CompletableFuture<T> response) {
+        final LatencyHistogram histogram = latencies.computeIfAbsent(method, name -> new LatencyHistogram());
+        final long start = System.nanoTime();
+
+        inFlight.increment();
+        maxInFlight.accumulate(inFlight.sum());
+
+        response.whenComplete((value, error) -> {
+            inFlight.decrement();
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        });
+        return response;
+    }
+
+    public void onSuccess() {
+        succeeded.increment();
+    }
+
+    public void onFailure(Throwable e) {
+        failed.increment();
+
+        if (e instanceof TelegramApiRequestException) {
+            final Integer errorCode = ((TelegramApiRequestException) e).getErrorCode();
+            if (errorCode != null && errorCode == 429) {
+                tooManyRequests.increment();
+            } else if (errorCode != null && errorCode == 403) {
+                forbidden.increment();
+            }
+        }
+    }
+
+    public void onRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Record the number of chats a notification was sent to
+     */
+    public void onFanOut(int recipients) {
+        fanOutSizes.record(recipients);
+    }
+
+    /**
+     * Record how long handling a consumed update took
+     */
+    public void onUpdate(long durationNanos) {
+        updateLatency.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getTooManyRequests() {
+        return tooManyRequests.sum();
+    }
+
+    public long getForbidden() {
+        return forbidden.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public JSONObject toJson() {
+        final JSONObject calls = new JSONObject();
+        calls.put("succeeded", getSucceeded());
+        calls.put("failed", getFailed());
+        calls.put("retries", getRetries());
+        calls.put("tooManyRequests", getTooManyRequests());
+        calls.put("forbidden", getForbidden());
+        calls.put("inFlight", getInFlight());
+        calls.put("maxInFlight", getMaxInFlight());
+
+        final JSONObject methods = new JSONObject();
+        latencies.forEach((method, histogram) -> methods.put(method, histogram.toJson()));
+
+        final JSONObject json = new JSONObject();
+        json.put("calls", calls);
+        json.put("latencyMicros", methods);
+        json.put("fanOutSize", fanOutSizes.toJson());
+        json.put("updateLatencyMicros", updateLatency.toJson());
+        json.put("queueSize", DeliveryQueue.getInstance().size());
+        json.put("circuitBreaker", CircuitBreaker.getInstance().getState().name());
+        return json;
+    }
+}
@@ -0,0 +1,510 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import jenkinsci.plugins.telegrambot.telegram.TelegramBot;
+import jenkinsci.plugins.telegrambot.telegram.TelegramBotRunner;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide bounded queue of outbound messages with its own pool of worker threads.
+ * Build steps enqueue an already expanded message and return right away,
+ * the workers do the actual Telegram HTTP calls.
+ * <p>
+ * Different chats are served in parallel, up to the number of workers,
+ * while the messages of a single chat are sent one after another in the order they were enqueued.
+ * <p>
+ * Failed sends are retried according to the {@link RetryPolicy}. The chat stays blocked during the backoff,
+ * so the order is kept, but no worker waits for it: the retry is put back at the head of the queue by a timer.
+ * <p>
+ * With a coalescing window set, the first message of a chat is held, with its chat blocked, until the window
+ * is over and then sent together with the messages that arrived for the same chat in the meantime,
+ * as one Telegram message. Like a retry, it is put back at the head of the queue by a timer.
+ * <p>
+ * While the {@link CircuitBreaker} is open, the workers park the messages they take in a bounded backlog,
+ * or drop them, according to the {@link BacklogPolicy}. The chats of parked messages stay blocked,
+ * and the backlog is put back at the head of the queue once the breaker lets a probe call through.
+ */
+public class DeliveryQueue {
+    private static final Logger LOG = Logger.getLogger(DeliveryQueue.class.getName());
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int DEFAULT_WORKERS = 4;
+
+    private static final String COALESCED_SEPARATOR = "\n\n";
+
+    private static DeliveryQueue instance;
+
+    private final Dispatcher dispatcher;
+    private volatile DeliveryJournal journal;
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TelegramBot delivery retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<OutboundMessage> pending = new ArrayDeque<>();
+    private final Set<Long> inFlightChats = new HashSet<>();
+    private final ArrayDeque<OutboundMessage> parked = new ArrayDeque<>();
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.getInstance();
+
+    private int capacity;
+    private int workers;
+    private int runningWorkers;
+    private int workerSequence;
+    private OverflowPolicy overflowPolicy;
+    private volatile long coalesceWindowMillis;
+    private BacklogPolicy backlogPolicy = BacklogPolicy.PARK;
+    private boolean unparkScheduled;
+
+    /**
+     * Sends a single message taken from the queue
+     */
+    public interface Dispatcher {
+        void dispatch(OutboundMessage message) throws Exception;
+    }
+
+    public DeliveryQueue(Dispatcher dispatcher, int capacity, int workers, OverflowPolicy overflowPolicy) {
+        this.dispatcher = dispatcher;
+        configure(capacity, workers, overflowPolicy);
+    }
+
+    public synchronized static DeliveryQueue getInstance() {
+        if (instance == null) {
+            instance = new DeliveryQueue(DeliveryQueue::dispatchToBot,
+                    DEFAULT_CAPACITY, DEFAULT_WORKERS, OverflowPolicy.BLOCK);
+            instance.setJournal(DeliveryJournal.getInstance());
+        }
+        return instance;
+    }
+
+    private static void dispatchToBot(OutboundMessage message) throws Exception {
+        TelegramBot bot = TelegramBotRunner.getInstance().getBot();
+        if (bot == null) {
+            // Retried, the bot may be still starting up
+            throw new IOException("Bot is not running");
+        }
+        bot.deliver(message);
+    }
+
+    /**
+     * Record every enqueued message in the journal until it is finished
+     */
+    public void setJournal(DeliveryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Apply new queue settings. Pending messages are kept, extra workers are started right away
+     * and superfluous ones stop after finishing their current message.
+     */
+    public void configure(int capacity, int workers, OverflowPolicy overflowPolicy) {
+        lock.lock();
+        try {
+            this.capacity = Math.max(1, capacity);
+            this.workers = Math.max(1, workers);
+            this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.BLOCK;
+
+            while (runningWorkers < this.workers) {
+                startWorker();
+            }
+
+            // Let the blocked producers and the superfluous workers re-check their conditions
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Merge the messages a chat gets within the given time into one, 0 disables merging
+     */
+    public void setCoalesceWindowMillis(long coalesceWindowMillis) {
+        this.coalesceWindowMillis = Math.max(0, coalesceWindowMillis);
+    }
+
+    /**
+     * What to do with the messages taken while the circuit breaker is open
+     */
+    public void setBacklogPolicy(BacklogPolicy backlogPolicy) {
+        lock.lock();
+        try {
+            this.backlogPolicy = backlogPolicy != null ? backlogPolicy : BacklogPolicy.PARK;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put the message to the queue applying the overflow policy when the queue is full
+     *
+     * @throws RejectedExecutionException if the queue is full and the policy is {@link OverflowPolicy#FAIL}
+     */
+    public void enqueue(OutboundMessage message) throws InterruptedException {
+        enqueue(message, true);
+    }
+
+    /**
+     * @param journaling  whether to record the message in the journal, false if it is there already
+     */
+    void enqueue(OutboundMessage message, boolean journaling) throws InterruptedException {
+        final DeliveryJournal journal = this.journal;
+        if (journaling && journal != null) {
+            try {
+                journal.append(message);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to write the message to the outbox: " + message, e);
+            }
+        }
+
+        boolean enqueued = false;
+        try {
+            lock.lockInterruptibly();
+            try {
+                while (pending.size() >= capacity) {
+                    switch (overflowPolicy) {
+                        case BLOCK:
+                            notFull.await();
+                            break;
+                        case DROP_OLDEST:
+                            OutboundMessage dropped = pending.pollFirst();
+                            dropped.getResult().complete(DeliveryResult.SKIPPED);
+                            LOG.log(Level.WARNING, "Delivery queue is full, dropping the oldest message: " + dropped);
+                            break;
+                        case FAIL:
+                        default:
+                            throw new RejectedExecutionException(String.format(
+                                    "Telegram delivery queue is full (%d messages)", capacity));
+                    }
+                }
+
+                pending.addLast(message);
+                enqueued = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            if (!enqueued) {
+                // Rejected or interrupted: completing the message acknowledges it in the journal
+                message.getResult().complete(DeliveryResult.SKIPPED);
+            }
+        }
+    }
+
+    public int getWorkers() {
+        lock.lock();
+        try {
+            return workers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of messages parked while the circuit breaker is open
+     */
+    public int getParkedCount() {
+        lock.lock();
+        try {
+            return parked.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startWorker() {
+        runningWorkers++;
+        Thread thread = new Thread(this::runWorker, "TelegramBot delivery #" + ++workerSequence);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Take the oldest message of a chat no other worker is sending to,
+     * or return null when this worker is superfluous and has to stop
+     */
+    private OutboundMessage take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (runningWorkers > workers) {
+                    runningWorkers--;
+                    return null;
+                }
+
+                Iterator<OutboundMessage> iterator = pending.iterator();
+                while (iterator.hasNext()) {
+                    OutboundMessage message = iterator.next();
+                    if (inFlightChats.add(message.getChatId())) {
+                        iterator.remove();
+                        notFull.signal();
+                        return message;
+                    }
+                }
+
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Allow the next message of the chat to be taken
+     */
+    private void release(OutboundMessage message) {
+        lock.lock();
+        try {
+            inFlightChats.remove(message.getChatId());
+            if (!pending.isEmpty()) {
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hold the message, with its chat blocked, until its coalescing window is over; a timer puts it back
+     * at the head of the queue then, so no worker waits for the window
+     *
+     * @return whether the message is held
+     */
+    private boolean holdForCoalescing(OutboundMessage message) {
+        if (!isCoalescable(message)) {
+            return false;
+        }
+
+        final long waitNanos = message.getEnqueuedAt() + TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis) - System.nanoTime();
+        if (waitNanos <= 0) {
+            return false;
+        }
+
+        try {
+            retryScheduler.schedule(() -> retry(message), waitNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Sent right away, without the messages which would have been merged
+            return false;
+        }
+    }
+
+    private boolean isCoalescable(OutboundMessage message) {
+        return coalesceWindowMillis > 0 && message.getAttempts() == 0 && message.getParseMode().isValid(message.getText());
+    }
+
+    /**
+     * Merge the message, whose coalescing window is over, with the messages of the same chat and parse mode
+     * enqueued in the meantime, as long as the result fits into one Telegram message.
+     * The results of the merged messages follow the result of the returned one.
+     */
+    private OutboundMessage coalesce(OutboundMessage first) {
+        if (!isCoalescable(first)) {
+            return first;
+        }
+
+        final List<OutboundMessage> merged = new ArrayList<>();
+        final StringBuilder text = new StringBuilder(first.getText());
+
+        lock.lock();
+        try {
+            Iterator<OutboundMessage> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                OutboundMessage next = iterator.next();
+                if (!first.getChatId().equals(next.getChatId())) {
+                    continue;
+                }
+
+                // Stop at the first message which can't be merged, so the chat keeps its order
+                if (text.length() + COALESCED_SEPARATOR.length() + next.getText().length() > OutboundMessage.MAX_TEXT_LENGTH
+                        || first.getParseMode() != next.getParseMode()
+                        || !next.getParseMode().isValid(next.getText())) {
+                    break;
+                }
+
+                text.append(COALESCED_SEPARATOR).append(next.getText());
+                merged.add(next);
+                iterator.remove();
+            }
+
+            if (!merged.isEmpty()) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (merged.isEmpty()) {
+            return first;
+        }
+
+        merged.add(0, first);
+        final OutboundMessage coalesced = new OutboundMessage(first.getChatId(), text.toString(), first.getParseMode());
+        coalesced.getResult().whenComplete((result, error) ->
+                merged.forEach(message -> message.getResult().complete(result)));
+
+        LOG.log(Level.FINE, "Coalesced {0} messages for chat {1}", new Object[]{merged.size(), first.getChatId()});
+        return coalesced;
+    }
+
+    /**
+     * Put the message back at the head of the queue and allow its chat to be taken again
+     */
+    private void retry(OutboundMessage message) {
+        lock.lock();
+        try {
+            pending.addFirst(message);
+            inFlightChats.remove(message.getChatId());
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keep the message, with its chat blocked, until the circuit breaker lets calls through again,
+     * or drop it when the backlog policy says so
+     */
+    private void park(OutboundMessage message) {
+        lock.lock();
+        try {
+            if (backlogPolicy == BacklogPolicy.DROP) {
+                LOG.log(Level.WARNING, "Telegram API is unavailable, dropping the message: " + message);
+                message.getResult().complete(DeliveryResult.SKIPPED);
+                inFlightChats.remove(message.getChatId());
+                notEmpty.signalAll();
+                return;
+            }
+
+            if (parked.size() >= capacity) {
+                OutboundMessage dropped = parked.pollFirst();
+                LOG.log(Level.WARNING, "Delivery backlog is full, dropping the oldest message: " + dropped);
+                dropped.getResult().complete(DeliveryResult.SKIPPED);
+                inFlightChats.remove(dropped.getChatId());
+                notEmpty.signalAll();
+            }
+            parked.addLast(message);
+
+            if (!unparkScheduled) {
+                unparkScheduled = true;
+                retryScheduler.schedule(this::unpark, Math.max(100, circuitBreaker.getRemainingOpenMillis()), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put the parked messages back at the head of the queue, in their order, and allow their chats to be taken again
+     */
+    private void unpark() {
+        lock.lock();
+        try {
+            unparkScheduled = false;
+            Iterator<OutboundMessage> iterator = parked.descendingIterator();
+            while (iterator.hasNext()) {
+                OutboundMessage message = iterator.next();
+                pending.addFirst(message);
+                inFlightChats.remove(message.getChatId());
+            }
+            parked.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deliver the messages until this worker is superfluous. A worker only stops then, so the pool keeps its size:
+     * neither an interruption nor an unexpected error ends it, and the chat of the message in hand is released.
+     */
+    private void runWorker() {
+        while (true) {
+            final OutboundMessage message;
+            try {
+                message = take();
+            } catch (InterruptedException e) {
+                LOG.log(Level.WARNING, "Delivery worker was interrupted while waiting for a message, going on");
+                continue;
+            }
+            if (message == null) {
+                return;
+            }
+
+            try {
+                deliver(message);
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Error while delivering the message: " + message, e);
+                message.getResult().complete(DeliveryResult.FAILED);
+                release(message);
+            }
+        }
+    }
+
+    /**
+     * Send a message taken from the queue, or park, hold or retry it
+     */
+    private void deliver(OutboundMessage taken) {
+        if (circuitBreaker.isOpen()) {
+            park(taken);
+            return;
+        }
+
+        if (holdForCoalescing(taken)) {
+            return;
+        }
+
+        final OutboundMessage message = coalesce(taken);
+        try {
+            dispatcher.dispatch(message);
+            message.getResult().complete(DeliveryResult.SENT);
+        } catch (CircuitOpenException e) {
+            park(message);
+            return;
+        } catch (InterruptedException e) {
+            // Given up, while the worker goes on with the next message
+            LOG.log(Level.WARNING, "Interrupted while delivering the message: " + message);
+            message.getResult().complete(DeliveryResult.FAILED);
+        } catch (Exception e) {
+            final long delay = RetryPolicy.nextDelayMillis(message.incrementAttempts(), e);
+            if (delay >= 0) {
+                LOG.log(Level.WARNING, String.format("Error while delivering the message: %s, retrying in %d ms: %s",
+                        message, delay, e.getMessage()));
+                DeliveryMetrics.getInstance().onRetry();
+                retryScheduler.schedule(() -> retry(message), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            LOG.log(Level.SEVERE, "Error while delivering the message: " + message, e);
+            message.getResult().complete(DeliveryResult.FAILED);
+        }
+        release(message);
+    }
+}
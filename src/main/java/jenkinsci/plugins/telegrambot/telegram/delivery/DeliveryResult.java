@@ -0,0 +1,67 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Aggregated outcome of sending to one or many chats
+ */
+public final class DeliveryResult {
+    public static final DeliveryResult EMPTY = new DeliveryResult(0, 0, 0);
+    public static final DeliveryResult SENT = new DeliveryResult(1, 0, 0);
+    public static final DeliveryResult FAILED = new DeliveryResult(0, 1, 0);
+    public static final DeliveryResult SKIPPED = new DeliveryResult(0, 0, 1);
+
+    private final int sent;
+    private final int failed;
+    private final int skipped;
+
+    private DeliveryResult(int sent, int failed, int skipped) {
+        this.sent = sent;
+        this.failed = failed;
+        this.skipped = skipped;
+    }
+
+    public DeliveryResult plus(DeliveryResult other) {
+        return new DeliveryResult(sent + other.sent, failed + other.failed, skipped + other.skipped);
+    }
+
+    /**
+     * Completes when all the given results are complete, with their sum
+     */
+    public static CompletableFuture<DeliveryResult> allOf(List<CompletableFuture<DeliveryResult>> results) {
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> results.stream()
+                        .map(CompletableFuture::join)
+                        .reduce(EMPTY, DeliveryResult::plus));
+    }
+
+    /**
+     * Completes when all the given results are complete, with the worst of them:
+     * failed if any failed, else skipped if any was skipped, else sent
+     */
+    public static CompletableFuture<DeliveryResult> worstOf(List<CompletableFuture<DeliveryResult>> results) {
+        return allOf(results).thenApply(sum -> sum.failed > 0 ? FAILED : sum.skipped > 0 ? SKIPPED : SENT);
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getTotal() {
+        return sent + failed + skipped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sent: %d, failed: %d, skipped: %d", sent, failed, skipped);
+    }
+}
@@ -0,0 +1,15 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+/**
+ * Thrown when a file to send can't be read, on the controller or on the agent it is on.
+ * It says nothing about the Telegram API, so it is neither retried nor counted by the {@link CircuitBreaker}.
+ */
+public class FileReadException extends TelegramApiException {
+    private static final long serialVersionUID = 1L;
+
+    public FileReadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,79 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An already expanded message waiting in the {@link DeliveryQueue} to be sent to one chat.
+ */
+public class OutboundMessage {
+    /**
+     * The longest text Telegram accepts in a single message
+     */
+    public static final int MAX_TEXT_LENGTH = 4096;
+
+    private final Long chatId;
+    private final String text;
+    private final ParseMode parseMode;
+    private final long enqueuedAt = System.nanoTime();
+    private final CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+    private int attempts;
+
+    public OutboundMessage(Long chatId, String text) {
+        this(chatId, text, ParseMode.MARKDOWN);
+    }
+
+    public OutboundMessage(Long chatId, String text, ParseMode parseMode) {
+        this.chatId = chatId;
+        this.text = text;
+        this.parseMode = parseMode;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the message was created
+     */
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Count one more attempt to send the message
+     *
+     * @return attempts made so far
+     */
+    int incrementAttempts() {
+        return ++attempts;
+    }
+
+    /**
+     * Completed by the queue once the message was sent, failed or dropped
+     */
+    public CompletableFuture<DeliveryResult> getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboundMessage{" +
+                "chatId=" + chatId +
+                ", length=" + (text != null ? text.length() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+/**
+ * What the delivery queue does when a message is enqueued and the queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait until one of the workers frees a slot
+     */
+    BLOCK,
+
+    /**
+     * Drop the oldest pending message to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Reject the new message, the build step fails
+     */
+    FAIL
+}
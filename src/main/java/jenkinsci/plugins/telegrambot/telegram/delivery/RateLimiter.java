@@ -0,0 +1,78 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the bot within the Telegram limits: about 30 messages per second in total,
+ * 1 message per second to a private chat and 20 messages per minute to a group.
+ * <p>
+ * The per-chat buckets live in a {@link ConcurrentHashMap}, so chats never contend on a common lock,
+ * and are created on first use and dropped again after some idle time.
+ */
+public class RateLimiter {
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final RateLimiter INSTANCE = new RateLimiter();
+
+    private final TokenBucket global = new TokenBucket(30, TimeUnit.SECONDS.toNanos(1), 30);
+    private final ConcurrentMap<Long, TokenBucket> chats = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime() + EVICTION_INTERVAL_NANOS);
+
+    public static RateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Wait until a message may be sent to the chat
+     */
+    public void acquire(Long chatId) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserveChat(chatId));
+        TimeUnit.NANOSECONDS.sleep(reserveGlobal());
+    }
+
+    /**
+     * Reserve a slot for a message to the chat without waiting for it. Once it is due,
+     * the slot of the bot is taken with {@link #reserveGlobal()}, so a chat which has to wait
+     * takes no slot from the other chats in the meantime.
+     *
+     * @return nanoseconds to wait before reserving the slot of the bot
+     */
+    public long reserveChat(Long chatId) {
+        final long now = System.nanoTime();
+        evictIdleBuckets(now);
+        return chatId != null ? chats.computeIfAbsent(chatId, RateLimiter::newChatBucket).reserve(now) : 0;
+    }
+
+    /**
+     * Reserve a slot of the bot, for any chat, without waiting for it
+     *
+     * @return nanoseconds to wait before sending the message
+     */
+    public long reserveGlobal() {
+        return global.reserve(System.nanoTime());
+    }
+
+    public int getChatBucketCount() {
+        return chats.size();
+    }
+
+    private static TokenBucket newChatBucket(Long chatId) {
+        // Groups and channels have negative ids
+        return chatId < 0
+                ? new TokenBucket(20, TimeUnit.MINUTES.toNanos(1), 1)
+                : new TokenBucket(1, TimeUnit.SECONDS.toNanos(1), 1);
+    }
+
+    private void evictIdleBuckets(long now) {
+        final long scheduled = nextEviction.get();
+        if (now - scheduled < 0 || !nextEviction.compareAndSet(scheduled, now + EVICTION_INTERVAL_NANOS)) {
+            return;
+        }
+
+        chats.values().removeIf(bucket -> bucket.isIdle(now, IDLE_NANOS));
+    }
+}
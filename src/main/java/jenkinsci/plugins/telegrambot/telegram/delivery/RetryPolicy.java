@@ -0,0 +1,72 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed send is worth another attempt and how long to wait before it.
+ * <p>
+ * Network errors, timeouts, 5xx and 429 responses are retried with jittered exponential backoff,
+ * a 429 waits at least the retry_after the Telegram API asked for.
+ * Everything else, like 400 or 403, will fail again and is given up right away.
+ */
+public final class RetryPolicy {
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static final long BASE_DELAY_MILLIS = 1000;
+    private static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private RetryPolicy() {
+    }
+
+    public static boolean isRetryable(Throwable e) {
+        if (e instanceof TelegramApiRequestException) {
+            final Integer errorCode = ((TelegramApiRequestException) e).getErrorCode();
+            return errorCode != null && (errorCode == 429 || errorCode >= 500);
+        }
+
+        // A file which couldn't be read won't be readable the next time either
+        if (e instanceof TelegramApiValidationException || e instanceof FileReadException) {
+            return false;
+        }
+
+        // The client wraps network errors and timeouts into a plain TelegramApiException
+        if (e instanceof TelegramApiException) {
+            return e.getCause() instanceof IOException;
+        }
+
+        return e instanceof IOException;
+    }
+
+    /**
+     * @param attempts  attempts made so far, including the failed one
+     * @param e  the error of the failed attempt
+     * @return milliseconds to wait before the next attempt, or -1 to give up
+     */
+    public static long nextDelayMillis(int attempts, Throwable e) {
+        if (attempts >= MAX_ATTEMPTS || !isRetryable(e)) {
+            return -1;
+        }
+
+        final long backoff = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempts - 1, 16));
+        final long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+
+        return Math.max(delay, retryAfterMillis(e));
+    }
+
+    private static long retryAfterMillis(Throwable e) {
+        if (e instanceof TelegramApiRequestException) {
+            final ResponseParameters parameters = ((TelegramApiRequestException) e).getParameters();
+            if (parameters != null && parameters.getRetryAfter() != null) {
+                return TimeUnit.SECONDS.toMillis(parameters.getRetryAfter());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,46 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as a generic cell rate algorithm:
+ * instead of counting tokens it keeps the time the next permit becomes free.
+ */
+final class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permits  permits per period
+     * @param periodNanos  length of the period
+     * @param burst  permits that may be taken at once by an idle bucket
+     */
+    TokenBucket(int permits, long periodNanos, int burst) {
+        this.intervalNanos = periodNanos / permits;
+        this.toleranceNanos = (Math.max(1, burst) - 1) * intervalNanos;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Reserve the next permit
+     *
+     * @return nanoseconds the caller has to wait before using the permit
+     */
+    long reserve(long now) {
+        while (true) {
+            final long arrival = theoreticalArrival.get();
+            final long start = Math.max(arrival, now);
+            if (theoreticalArrival.compareAndSet(arrival, start + intervalNanos)) {
+                return Math.max(0, start - toleranceNanos - now);
+            }
+        }
+    }
+
+    /**
+     * Whether the bucket has been full for longer than the given time, so dropping it changes nothing
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return theoreticalArrival.get() + idleNanos < now;
+    }
+}
@@ -35,7 +35,14 @@ public class Subscribers extends Observable {
         TelegramBotGlobalConfiguration config = GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class);
         
         // Handle null configuration gracefully - default to manual approval mode
-        if (config == null || config.getApprovalType() == UserApprover.ApprovalType.ALL) {
+        return getApprovedUsers(config != null ? config.getApprovalType() : null);
+    }
+
+    /**
+     * Users which get the notifications with the given approval type
+     */
+    public Set<User> getApprovedUsers(UserApprover.ApprovalType approvalType) {
+        if (approvalType == null || approvalType == UserApprover.ApprovalType.ALL) {
             return users.stream().collect(Collectors.toSet());
         }
 
@@ -86,19 +86,17 @@ public class UserApprover {
     }
 
     private void updateUserApproval(User user, boolean approved) {
-        String message;
         boolean oldStatus = user.isApproved();
         if (approved) {
             user.approve();
-            message = String.valueOf(GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class)
-                    .getBotStrings().get("message.approved"));
         } else {
             user.unapprove();
-            message = String.valueOf(GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class)
-                    .getBotStrings().get("message.unapproved"));
         }
 
+        // Only look up the message when there is something to tell
         if (oldStatus != user.isApproved()) {
+            String message = String.valueOf(GlobalConfiguration.all().get(TelegramBotGlobalConfiguration.class)
+                    .getBotStrings().get(approved ? "message.approved" : "message.unapproved"));
             TelegramBotRunner.getInstance().getBot().sendMessage(user.getId(), message);
         }
     }
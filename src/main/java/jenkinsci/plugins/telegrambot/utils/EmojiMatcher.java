@@ -0,0 +1,199 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, precompiled lookup of {@code :name:} placeholders, replacing all of them in one scan of a text.
+ * <p>
+ * The placeholders are kept in a trie, so a placeholder is recognized without creating substrings.
+ * Placeholders sharing a colon, like {@code :test:bug:}, can't both be replaced; the one coming first in
+ * the iteration order of the placeholders wins, which is what replacing one placeholder after another
+ * in that order gives.
+ */
+public final class EmojiMatcher {
+    private final Node root = new Node();
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+
+        /**
+         * Replacement of the placeholder ending here, null if none does
+         */
+        private String value;
+        private int priority;
+
+        Node child(char c) {
+            final char[] labels = this.labels;
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    private EmojiMatcher() {
+    }
+
+    /**
+     * @param placeholders  replacement by placeholder; placeholders look like {@code :name:},
+     *                      with a name not containing colons. Their iteration order decides between
+     *                      placeholders sharing a colon.
+     * @throws IllegalArgumentException for a placeholder of another form
+     */
+    public static EmojiMatcher compile(Map<String, String> placeholders) {
+        final EmojiMatcher matcher = new EmojiMatcher();
+
+        int priority = 0;
+        for (Map.Entry<String, String> entry : placeholders.entrySet()) {
+            final String placeholder = entry.getKey();
+            if (!isPlaceholder(placeholder)) {
+                throw new IllegalArgumentException("Not a :name: placeholder: " + placeholder);
+            }
+
+            Node node = matcher.root;
+            for (int i = 0; i < placeholder.length(); i++) {
+                node = node.addChild(placeholder.charAt(i));
+            }
+            node.value = entry.getValue();
+            node.priority = priority++;
+        }
+
+        return matcher;
+    }
+
+    /**
+     * Whether the text has the {@code :name:} form of a placeholder
+     */
+    public static boolean isPlaceholder(String text) {
+        return text != null && text.length() > 2
+                && text.charAt(0) == ':' && text.charAt(text.length() - 1) == ':'
+                && text.indexOf(':', 1) == text.length() - 1;
+    }
+
+    /**
+     * Replace all the placeholders in the text
+     *
+     * @return the text itself if it has no placeholder
+     */
+    public String replace(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int colon = text.indexOf(':');
+        if (colon < 0) {
+            return text;
+        }
+
+        StringBuilder result = null;
+        int copied = 0;
+
+        while (colon >= 0) {
+            final Node match = match(text, colon);
+            if (match == null) {
+                colon = text.indexOf(':', colon + 1);
+                continue;
+            }
+
+            if (result == null) {
+                result = new StringBuilder(text.length());
+            }
+            result.append(text, copied, colon);
+
+            final int end = end(text, colon);
+            if (match(text, end) == null) {
+                result.append(match.value);
+                copied = end + 1;
+            } else {
+                copied = replaceChain(text, colon, result);
+            }
+            colon = text.indexOf(':', copied);
+        }
+
+        if (result == null) {
+            return text;
+        }
+        return result.append(text, copied, text.length()).toString();
+    }
+
+    /**
+     * The placeholder starting at the index, or null if none does
+     */
+    private Node match(String text, int start) {
+        Node node = root;
+        for (int i = start; i < text.length(); i++) {
+            node = node.child(text.charAt(i));
+            if (node == null) {
+                return null;
+            }
+            if (node.value != null && i > start) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Index of the closing colon of the placeholder starting at the index
+     */
+    private static int end(String text, int start) {
+        return text.indexOf(':', start + 1);
+    }
+
+    /**
+     * Replace a chain of placeholders where each one starts with the closing colon of the previous one.
+     * Neighbours can't both be replaced, so they are taken by priority, and from left to right among equals.
+     *
+     * @return index right after the chain
+     */
+    private int replaceChain(String text, int start, StringBuilder result) {
+        final List<int[]> chain = new ArrayList<>();
+        Node match;
+        for (int i = start; (match = match(text, i)) != null; i = end(text, i)) {
+            chain.add(new int[]{i, end(text, i), match.priority});
+        }
+
+        final Integer[] order = new Integer[chain.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> chain.get(a)[2] != chain.get(b)[2]
+                ? Integer.compare(chain.get(a)[2], chain.get(b)[2])
+                : Integer.compare(a, b));
+
+        final boolean[] replaced = new boolean[order.length];
+        for (int i : order) {
+            if ((i == 0 || !replaced[i - 1]) && (i == order.length - 1 || !replaced[i + 1])) {
+                replaced[i] = true;
+            }
+        }
+
+        int copied = start;
+        for (int i = 0; i < replaced.length; i++) {
+            if (replaced[i]) {
+                final int[] occurrence = chain.get(i);
+                result.append(text, copied, occurrence[0]).append(match(text, occurrence[0]).value);
+                copied = occurrence[1] + 1;
+            }
+        }
+
+        // The closing colon of the chain, unless its last placeholder was replaced
+        final int chainEnd = chain.get(chain.size() - 1)[1] + 1;
+        result.append(text, copied, chainEnd);
+        return chainEnd;
+    }
+}
@@ -0,0 +1,111 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The emoji placeholders in use: the built-in ones of {@link EmojiUtils} plus the custom ones
+ * from the global configuration.
+ * <p>
+ * Readers get an immutable snapshot with a precompiled {@link EmojiMatcher}, without locking.
+ * Changing the custom placeholders compiles a new snapshot once and swaps it in.
+ */
+public final class EmojiRegistry {
+    private static final EmojiRegistry INSTANCE = new EmojiRegistry();
+
+    private final AtomicReference<Snapshot> snapshot;
+
+    private static final class Snapshot {
+        final Map<String, String> custom;
+        final Map<String, String> placeholders;
+        final EmojiMatcher matcher;
+
+        Snapshot(Map<String, String> custom) {
+            final Map<String, String> placeholders = new HashMap<>(EmojiUtils.getBuiltInPlaceholders());
+            placeholders.putAll(custom);
+
+            this.custom = custom;
+            this.placeholders = Collections.unmodifiableMap(placeholders);
+            this.matcher = EmojiMatcher.compile(placeholders);
+        }
+    }
+
+    private EmojiRegistry() {
+        snapshot = new AtomicReference<>(new Snapshot(Collections.emptyMap()));
+    }
+
+    public static EmojiRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public EmojiMatcher getMatcher() {
+        return snapshot.get().matcher;
+    }
+
+    /**
+     * All the placeholders and their emojis, custom ones overriding built-in ones
+     */
+    public Map<String, String> getPlaceholders() {
+        return snapshot.get().placeholders;
+    }
+
+    /**
+     * Replace the custom placeholders; nothing is recompiled if they didn't change
+     *
+     * @throws IllegalArgumentException for a placeholder not of the {@code :name:} form
+     */
+    public void setCustomPlaceholders(Map<String, String> custom) {
+        final Map<String, String> copy = Collections.unmodifiableMap(new LinkedHashMap<>(custom));
+        if (copy.equals(snapshot.get().custom)) {
+            return;
+        }
+
+        snapshot.set(new Snapshot(copy));
+        // Compiled templates have the old emojis in their text
+        MessageTemplate.clearCache();
+    }
+
+    /**
+     * Parse custom placeholders, one {@code name=emoji} per line. The name may be given with or without
+     * its colons; empty lines and lines starting with {@code #} are skipped.
+     *
+     * @throws IllegalArgumentException for a malformed line
+     */
+    public static Map<String, String> parse(String text) {
+        final Map<String, String> placeholders = new LinkedHashMap<>();
+        if (text == null) {
+            return placeholders;
+        }
+
+        int lineNumber = 0;
+        for (String line : text.split("\\r?\\n")) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final int separator = line.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected name=emoji");
+            }
+
+            String name = line.substring(0, separator).trim();
+            final String emoji = line.substring(separator + 1).trim();
+            if (!name.startsWith(":")) {
+                name = ":" + name + ":";
+            }
+            if (!EmojiMatcher.isPlaceholder(name) || name.chars().anyMatch(Character::isWhitespace)) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + name + " is not a valid placeholder name");
+            }
+            if (emoji.isEmpty()) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": no emoji given for " + name);
+            }
+            placeholders.put(name, emoji);
+        }
+        return placeholders;
+    }
+}
@@ -2,6 +2,7 @@ package jenkinsci.plugins.telegrambot.utils;
 
 import hudson.model.Result;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -111,7 +112,7 @@ public class EmojiUtils {
         EMOJI_PLACEHOLDERS.put(":test:", TEST_TUBE);
         EMOJI_PLACEHOLDERS.put(":bug:", BUG);
     }
-    
+
     /**
      * Get emoji for Jenkins build result
      */
@@ -182,20 +183,29 @@ public class EmojiUtils {
     }
     
     /**
-     * Replace emoji placeholders in text with actual emojis
+     * Replace emoji placeholders in text with actual emojis, in a single scan of the text
      * Example: "Build :success:" becomes "Build ✅"
      */
     public static String replaceEmojiPlaceholders(String text) {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        String result = text;
-        for (Map.Entry<String, String> entry : EMOJI_PLACEHOLDERS.entrySet()) {
-            result = result.replace(entry.getKey(), entry.getValue());
-        }
-        
-        return result;
+
+        return EmojiRegistry.getInstance().getMatcher().replace(text);
+    }
+
+    /**
+     * The placeholders in use and their emojis, including the custom ones
+     */
+    public static Map<String, String> getPlaceholders() {
+        return EmojiRegistry.getInstance().getPlaceholders();
+    }
+
+    /**
+     * The built-in placeholders and their emojis
+     */
+    public static Map<String, String> getBuiltInPlaceholders() {
+        return Collections.unmodifiableMap(EMOJI_PLACEHOLDERS);
     }
     
     /**
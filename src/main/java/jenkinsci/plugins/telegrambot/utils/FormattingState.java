@@ -0,0 +1,118 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+/**
+ * Tracks the formatting entities open at a position of a text in one parse mode, so a text can be cut
+ * where the entities can be closed and opened again in the next part.
+ * The text is consumed token by token; a cut never falls inside a token, like an HTML tag or entity
+ * or an escaped character.
+ */
+interface FormattingState {
+
+    /**
+     * Consume the token starting at the given index
+     *
+     * @return index of the next token
+     */
+    int advance(CharSequence text, int i);
+
+    /**
+     * Whether the token consumed last is only markup, nothing Telegram shows
+     */
+    boolean isMarkup();
+
+    /**
+     * Whether no entity is open
+     */
+    boolean isOutside();
+
+    /**
+     * Whether the open entities can be closed at a cut and opened again at the start of the next part
+     */
+    boolean isReopenable();
+
+    /**
+     * The markup closing the open entities, innermost first
+     */
+    String closing();
+
+    /**
+     * Length of {@link #closing()}, without building it
+     */
+    int closingLength();
+
+    /**
+     * The markup opening the open entities again, outermost first
+     */
+    String opening();
+
+    /**
+     * An independent copy, continuing from the same position
+     */
+    FormattingState copy();
+
+    /**
+     * A state at the start of a text in the parse mode
+     */
+    static FormattingState of(ParseMode parseMode) {
+        switch (parseMode) {
+            case MARKDOWN:
+                return new MarkdownState();
+            case MARKDOWN_V2:
+                return new MarkdownV2State();
+            case HTML:
+                return new HtmlState();
+            default:
+                return PlainState.INSTANCE;
+        }
+    }
+
+    /**
+     * Plain text has no entities, any position is outside
+     */
+    final class PlainState implements FormattingState {
+        static final PlainState INSTANCE = new PlainState();
+
+        private PlainState() {
+        }
+
+        @Override
+        public int advance(CharSequence text, int i) {
+            return i + 1;
+        }
+
+        @Override
+        public boolean isMarkup() {
+            return false;
+        }
+
+        @Override
+        public boolean isOutside() {
+            return true;
+        }
+
+        @Override
+        public boolean isReopenable() {
+            return true;
+        }
+
+        @Override
+        public String closing() {
+            return "";
+        }
+
+        @Override
+        public int closingLength() {
+            return 0;
+        }
+
+        @Override
+        public String opening() {
+            return "";
+        }
+
+        @Override
+        public FormattingState copy() {
+            return this;
+        }
+    }
+}
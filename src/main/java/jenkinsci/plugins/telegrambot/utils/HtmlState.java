@@ -0,0 +1,129 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Tracks which tags of Telegram HTML are open at a position of a text. Tags and entities like
+ * {@code &amp;} are single tokens. Every tag but a custom emoji, whose content must stay one emoji,
+ * can be closed at a cut and opened again with the same attributes.
+ */
+final class HtmlState implements FormattingState {
+    private static final int MAX_ENTITY_LENGTH = 12;
+    private static final String CUSTOM_EMOJI = "tg-emoji";
+
+    /**
+     * Name and opening tag of the open elements, innermost first
+     */
+    private final ArrayDeque<String[]> open;
+    private int closingLength;
+    private boolean markup;
+
+    HtmlState() {
+        this.open = new ArrayDeque<>();
+    }
+
+    private HtmlState(HtmlState other) {
+        this.open = new ArrayDeque<>(other.open);
+        this.closingLength = other.closingLength;
+        this.markup = other.markup;
+    }
+
+    @Override
+    public int advance(CharSequence text, int i) {
+        final char c = text.charAt(i);
+        markup = false;
+
+        if (c == '&') {
+            for (int j = i + 1; j < text.length() && j <= i + MAX_ENTITY_LENGTH; j++) {
+                if (text.charAt(j) == ';') {
+                    return j + 1;
+                }
+            }
+            return i + 1;
+        }
+
+        if (c != '<') {
+            return i + 1;
+        }
+
+        int end = i + 1;
+        while (end < text.length() && text.charAt(end) != '>') {
+            end++;
+        }
+        if (end == text.length()) {
+            return i + 1;
+        }
+
+        markup = true;
+        final boolean closing = i + 1 < end && text.charAt(i + 1) == '/';
+        int nameEnd = closing ? i + 2 : i + 1;
+        while (nameEnd < end && !Character.isWhitespace(text.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        final String name = text.subSequence(closing ? i + 2 : i + 1, nameEnd).toString().toLowerCase(Locale.ROOT);
+
+        if (!closing) {
+            open.push(new String[]{name, text.subSequence(i, end + 1).toString()});
+            closingLength += name.length() + 3;
+        } else {
+            for (Iterator<String[]> elements = open.iterator(); elements.hasNext(); ) {
+                if (elements.next()[0].equals(name)) {
+                    elements.remove();
+                    closingLength -= name.length() + 3;
+                    break;
+                }
+            }
+        }
+        return end + 1;
+    }
+
+    @Override
+    public boolean isMarkup() {
+        return markup;
+    }
+
+    @Override
+    public boolean isOutside() {
+        return open.isEmpty();
+    }
+
+    @Override
+    public boolean isReopenable() {
+        for (String[] element : open) {
+            if (element[0].equals(CUSTOM_EMOJI)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String closing() {
+        final StringBuilder closing = new StringBuilder(closingLength);
+        for (String[] element : open) {
+            closing.append("</").append(element[0]).append('>');
+        }
+        return closing.toString();
+    }
+
+    @Override
+    public int closingLength() {
+        return closingLength;
+    }
+
+    @Override
+    public String opening() {
+        final StringBuilder opening = new StringBuilder();
+        for (Iterator<String[]> elements = open.descendingIterator(); elements.hasNext(); ) {
+            opening.append(elements.next()[1]);
+        }
+        return opening.toString();
+    }
+
+    @Override
+    public FormattingState copy() {
+        return new HtmlState(this);
+    }
+}
@@ -0,0 +1,87 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Utility class for checking the Telegram HTML the messages are sent with
+ */
+public class HtmlUtils {
+    private static final Set<String> TAGS = Set.of(
+            "b", "strong", "i", "em", "u", "ins", "s", "strike", "del", "span", "tg-spoiler",
+            "a", "code", "pre", "blockquote", "tg-emoji");
+
+    private static final Set<String> ENTITIES = Set.of("lt", "gt", "amp", "quot");
+
+    /**
+     * Check that Telegram can parse the text as HTML: only the supported tags, properly nested,
+     * and every other &lt;, &gt; and &amp; written as an entity.
+     */
+    public static boolean isValid(String text) {
+        if (text == null) {
+            return true;
+        }
+
+        final Deque<String> open = new ArrayDeque<>();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+
+            if (c == '&') {
+                final int end = text.indexOf(';', i);
+                if (end < 0 || !isEntity(text.substring(i + 1, end))) {
+                    return false;
+                }
+                i = end;
+            } else if (c == '<') {
+                final int end = text.indexOf('>', i);
+                if (end < 0) {
+                    return false;
+                }
+
+                final boolean closing = i + 1 < end && text.charAt(i + 1) == '/';
+                int nameEnd = closing ? i + 2 : i + 1;
+                while (nameEnd < end && !Character.isWhitespace(text.charAt(nameEnd))) {
+                    nameEnd++;
+                }
+                final String name = text.substring(closing ? i + 2 : i + 1, nameEnd).toLowerCase(Locale.ROOT);
+                if (!TAGS.contains(name)) {
+                    return false;
+                }
+
+                if (!closing) {
+                    open.push(name);
+                } else if (!name.equals(open.poll())) {
+                    return false;
+                }
+                i = end;
+            } else if (c == '>') {
+                return false;
+            }
+        }
+
+        return open.isEmpty();
+    }
+
+    private static boolean isEntity(String name) {
+        if (ENTITIES.contains(name)) {
+            return true;
+        }
+        if (name.length() < 2 || name.charAt(0) != '#') {
+            return false;
+        }
+
+        final boolean hex = name.charAt(1) == 'x' || name.charAt(1) == 'X';
+        final int start = hex ? 2 : 1;
+        if (start >= name.length()) {
+            return false;
+        }
+        for (int i = start; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), hex ? 16 : 10) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
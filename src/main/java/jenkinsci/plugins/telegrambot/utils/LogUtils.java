@@ -0,0 +1,152 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import hudson.console.ConsoleNote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Utility class for taking excerpts of build logs without reading them into memory
+ */
+public class LogUtils {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Longer lines are cut
+     */
+    private static final int MAX_LINE_LENGTH = 500;
+
+    /**
+     * Most characters of a line read to look for console notes and matches in
+     */
+    private static final int MAX_READ_LINE_LENGTH = 16 * 1024;
+
+    /**
+     * The lines of the log matching any of the patterns, then its last lines, with their console notes removed,
+     * found in one pass over the log. Only the first matching lines are kept, followed by the number of others.
+     * The log is read as a stream, so it may live in any log storage, and only the lines kept are held in memory.
+     */
+    public static List<String> excerpt(InputStream log, List<Pattern> patterns, int maxMatches, int tailLines)
+            throws IOException {
+
+        final Matches matches = new Matches(maxMatches > 0 ? patterns : Collections.emptyList(), maxMatches);
+        final ArrayDeque<String> tail = new ArrayDeque<>(Math.max(0, tailLines));
+        final Reader reader = new InputStreamReader(log, StandardCharsets.UTF_8);
+        final char[] buffer = new char[CHUNK_SIZE];
+        final StringBuilder line = new StringBuilder();
+        boolean pending = false;
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                final char c = buffer[i];
+                if (c == '\n') {
+                    offer(line, matches, tail, tailLines);
+                    line.setLength(0);
+                    pending = false;
+                } else {
+                    pending = true;
+                    if (line.length() < MAX_READ_LINE_LENGTH) {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        if (pending) {
+            offer(line, matches, tail, tailLines);
+        }
+
+        final List<String> lines = matches.getLines();
+        if (!lines.isEmpty() && !tail.isEmpty()) {
+            lines.add("...");
+        }
+        for (String tailLine : tail) {
+            lines.add(clean(tailLine));
+        }
+        return lines;
+    }
+
+    private static void offer(CharSequence line, Matches matches, ArrayDeque<String> tail, int tailLines) {
+        final int length = line.length() > 0 && line.charAt(line.length() - 1) == '\r' ? line.length() - 1 : line.length();
+        final String text = line.subSequence(0, length).toString();
+        matches.offer(text);
+        // Console notes are only removed from the lines kept
+        if (tailLines > 0) {
+            if (tail.size() == tailLines) {
+                tail.removeFirst();
+            }
+            tail.addLast(text);
+        }
+    }
+
+    /**
+     * The regular expressions, one per line; empty lines are skipped
+     *
+     * @throws java.util.regex.PatternSyntaxException if one of them isn't valid
+     */
+    public static List<Pattern> compilePatterns(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+
+        final List<Pattern> patterns = new ArrayList<>();
+        for (String line : text.split("\\r?\\n")) {
+            if (!line.trim().isEmpty()) {
+                patterns.add(Pattern.compile(line.trim()));
+            }
+        }
+        return patterns;
+    }
+
+    private static String clean(String line) {
+        final String text = ConsoleNote.removeNotes(line);
+        return text.length() > MAX_LINE_LENGTH ? text.substring(0, MAX_LINE_LENGTH) + "..." : text;
+    }
+
+    /**
+     * The first lines matching any of the patterns, and the number of the others
+     */
+    private static final class Matches {
+        private final List<Pattern> patterns;
+        private final int maxLines;
+        private final List<String> lines = new ArrayList<>();
+        private int others;
+
+        Matches(List<Pattern> patterns, int maxLines) {
+            this.patterns = patterns;
+            this.maxLines = maxLines;
+        }
+
+        void offer(String line) {
+            if (patterns.isEmpty()) {
+                return;
+            }
+
+            final String text = clean(line);
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(text).find()) {
+                    if (lines.size() < maxLines) {
+                        lines.add(text);
+                    } else {
+                        others++;
+                    }
+                    return;
+                }
+            }
+        }
+
+        List<String> getLines() {
+            if (others > 0) {
+                lines.add(String.format("... and %d more", others));
+            }
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+/**
+ * Tracks which Telegram (legacy) Markdown entity a position of a text is in:
+ * *bold*, _italic_, `code`, ```pre``` and [text](url) links.
+ * Only a ```pre``` block can be closed at a cut and opened again.
+ */
+final class MarkdownState implements FormattingState {
+    private static final String OPENING_FENCE = "```\n";
+    private static final String CLOSING_FENCE = "\n```";
+
+    private char open;
+    private boolean pre;
+    private boolean markup;
+
+    MarkdownState() {
+    }
+
+    private MarkdownState(char open, boolean pre) {
+        this.open = open;
+        this.pre = pre;
+    }
+
+    @Override
+    public int advance(CharSequence text, int i) {
+        final char openBefore = open;
+        final boolean preBefore = pre;
+        final int next = step(text, i);
+        // The URL of a link isn't shown either
+        markup = open != openBefore || pre != preBefore || open == ')';
+        return next;
+    }
+
+    private int step(CharSequence text, int i) {
+        final char c = text.charAt(i);
+
+        if (pre) {
+            if (startsWithFence(text, i)) {
+                pre = false;
+                return i + 3;
+            }
+            return i + 1;
+        }
+
+        if (open == '[') {
+            if (c == ']') {
+                if (i + 1 < text.length() && text.charAt(i + 1) == '(') {
+                    open = ')';
+                    return i + 2;
+                }
+                open = 0;
+            }
+            return i + 1;
+        }
+
+        if (open != 0) {
+            if (c == open) open = 0;
+            return i + 1;
+        }
+
+        if (c == '\\') {
+            // Escaped marker outside of an entity
+            return Math.min(i + 2, text.length());
+        }
+
+        if (startsWithFence(text, i)) {
+            pre = true;
+            return i + 3;
+        }
+
+        if (c == '*' || c == '_' || c == '`' || c == '[') {
+            open = c;
+        }
+        return i + 1;
+    }
+
+    @Override
+    public boolean isMarkup() {
+        return markup;
+    }
+
+    @Override
+    public boolean isOutside() {
+        return open == 0 && !pre;
+    }
+
+    @Override
+    public boolean isReopenable() {
+        return open == 0;
+    }
+
+    @Override
+    public String closing() {
+        return pre ? CLOSING_FENCE : "";
+    }
+
+    @Override
+    public int closingLength() {
+        return pre ? CLOSING_FENCE.length() : 0;
+    }
+
+    @Override
+    public String opening() {
+        return pre ? OPENING_FENCE : "";
+    }
+
+    @Override
+    public FormattingState copy() {
+        return new MarkdownState(open, pre);
+    }
+
+    static boolean startsWithFence(CharSequence text, int i) {
+        return i + 2 < text.length()
+                && text.charAt(i) == '`' && text.charAt(i + 1) == '`' && text.charAt(i + 2) == '`';
+    }
+}
@@ -0,0 +1,121 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+/**
+ * Utility class for checking the Telegram Markdown the messages are sent with
+ */
+public class MarkdownUtils {
+
+    /**
+     * Check that every entity (*bold*, _italic_, `code`, ```pre``` and links) opened in the text is closed again,
+     * so the text can be put next to another one without its markers pairing up with the other's.
+     */
+    public static boolean isBalanced(String text) {
+        if (text == null) {
+            return true;
+        }
+
+        final MarkdownState state = new MarkdownState();
+        for (int i = 0; i < text.length(); ) {
+            i = state.advance(text, i);
+        }
+
+        return state.isOutside();
+    }
+
+    /**
+     * Check that Telegram can parse the text as MarkdownV2: every entity is closed again and
+     * the reserved characters outside of entity markup are escaped.
+     */
+    public static boolean isValidMarkdownV2(String text) {
+        if (text == null) {
+            return true;
+        }
+
+        boolean bold = false, italic = false, underline = false, strikethrough = false, spoiler = false, link = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+
+            if (c == '\\') {
+                i++;
+                continue;
+            }
+
+            if (c == '`') {
+                // Inside code and pre only ` and \ are special
+                final String fence = MarkdownState.startsWithFence(text, i) ? "```" : "`";
+                int j = i + fence.length();
+                while (j < text.length() && !text.startsWith(fence, j)) {
+                    j += text.charAt(j) == '\\' ? 2 : 1;
+                }
+                if (j >= text.length()) {
+                    return false;
+                }
+                i = j + fence.length() - 1;
+                continue;
+            }
+
+            switch (c) {
+                case '*':
+                    bold = !bold;
+                    break;
+                case '_':
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '_') {
+                        underline = !underline;
+                        i++;
+                    } else {
+                        italic = !italic;
+                    }
+                    break;
+                case '~':
+                    strikethrough = !strikethrough;
+                    break;
+                case '|':
+                    if (i + 1 >= text.length() || text.charAt(i + 1) != '|') {
+                        return false;
+                    }
+                    spoiler = !spoiler;
+                    i++;
+                    break;
+                case '!':
+                    // Custom emoji: ![👍](tg://emoji?id=...)
+                    if (i + 1 >= text.length() || text.charAt(i + 1) != '[') {
+                        return false;
+                    }
+                    break;
+                case '[':
+                    if (link) {
+                        return false;
+                    }
+                    link = true;
+                    break;
+                case ']':
+                    if (!link || i + 1 >= text.length() || text.charAt(i + 1) != '(') {
+                        return false;
+                    }
+                    // The URL, where ) and \ must be escaped
+                    int j = i + 2;
+                    while (j < text.length() && text.charAt(j) != ')') {
+                        j += text.charAt(j) == '\\' ? 2 : 1;
+                    }
+                    if (j >= text.length()) {
+                        return false;
+                    }
+                    link = false;
+                    i = j;
+                    break;
+                case '>':
+                    // Block quotation
+                    if (i > 0 && text.charAt(i - 1) != '\n') {
+                        return false;
+                    }
+                    break;
+                case '(': case ')': case '#': case '+': case '-': case '=': case '{': case '}': case '.':
+                    return false;
+                default:
+                    break;
+            }
+        }
+
+        return !bold && !italic && !underline && !strikethrough && !spoiler && !link;
+    }
+}
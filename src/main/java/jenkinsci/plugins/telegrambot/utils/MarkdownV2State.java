@@ -0,0 +1,202 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Tracks which Telegram MarkdownV2 entities a position of a text is in, the way
+ * {@link MarkdownUtils#isValidMarkdownV2(String)} reads them: *bold*, _italic_, __underline__,
+ * ~strikethrough~, ||spoiler||, `code`, ```pre``` and [text](url) links.
+ * An escaped character and the URL of a link are single tokens. Every entity but a link can be closed
+ * at a cut and opened again.
+ */
+final class MarkdownV2State implements FormattingState {
+    private static final String OPENING_FENCE = "```\n";
+    private static final String CLOSING_FENCE = "\n```";
+
+    /**
+     * Markers of the open entities, innermost first
+     */
+    private final ArrayDeque<String> markers;
+    private boolean code;
+    private boolean pre;
+    private boolean link;
+    /**
+     * Whether the last token was a _ or __ marker
+     */
+    private boolean underscore;
+    private boolean markup;
+    private String closing;
+
+    MarkdownV2State() {
+        this.markers = new ArrayDeque<>();
+    }
+
+    private MarkdownV2State(MarkdownV2State other) {
+        this.markers = new ArrayDeque<>(other.markers);
+        this.code = other.code;
+        this.pre = other.pre;
+        this.link = other.link;
+        this.underscore = other.underscore;
+        this.markup = other.markup;
+        this.closing = other.closing;
+    }
+
+    @Override
+    public int advance(CharSequence text, int i) {
+        final int markersBefore = markers.size();
+        final boolean codeBefore = code;
+        final boolean preBefore = pre;
+        final boolean linkBefore = link;
+        final int next = step(text, i);
+        markup = markers.size() != markersBefore || code != codeBefore || pre != preBefore || link != linkBefore;
+        return next;
+    }
+
+    private int step(CharSequence text, int i) {
+        final boolean afterUnderscore = underscore;
+        underscore = false;
+        if (afterUnderscore) {
+            closing = null;
+        }
+        final char c = text.charAt(i);
+
+        if (c == '\\') {
+            return Math.min(i + 2, text.length());
+        }
+
+        if (pre) {
+            if (MarkdownState.startsWithFence(text, i)) {
+                pre = false;
+                closing = null;
+                return i + 3;
+            }
+            return i + 1;
+        }
+
+        if (code) {
+            if (c == '`') {
+                code = false;
+                closing = null;
+            }
+            return i + 1;
+        }
+
+        switch (c) {
+            case '`':
+                closing = null;
+                if (MarkdownState.startsWithFence(text, i)) {
+                    pre = true;
+                    return i + 3;
+                }
+                code = true;
+                return i + 1;
+            case '*':
+                toggle("*");
+                return i + 1;
+            case '_':
+                underscore = true;
+                if (i + 1 < text.length() && text.charAt(i + 1) == '_') {
+                    toggle("__");
+                    return i + 2;
+                }
+                toggle("_");
+                return i + 1;
+            case '~':
+                toggle("~");
+                return i + 1;
+            case '|':
+                if (i + 1 < text.length() && text.charAt(i + 1) == '|') {
+                    toggle("||");
+                    return i + 2;
+                }
+                return i + 1;
+            case '[':
+                link = true;
+                return i + 1;
+            case ']':
+                if (!link || i + 1 >= text.length() || text.charAt(i + 1) != '(') {
+                    return i + 1;
+                }
+                // The URL, where ) and \ are escaped
+                int j = i + 2;
+                while (j < text.length() && text.charAt(j) != ')') {
+                    j += text.charAt(j) == '\\' ? 2 : 1;
+                }
+                link = false;
+                return Math.min(j + 1, text.length());
+            default:
+                return i + 1;
+        }
+    }
+
+    private void toggle(String marker) {
+        if (!markers.removeFirstOccurrence(marker)) {
+            markers.push(marker);
+        }
+        closing = null;
+    }
+
+    @Override
+    public boolean isMarkup() {
+        return markup;
+    }
+
+    @Override
+    public boolean isOutside() {
+        return markers.isEmpty() && !code && !pre && !link;
+    }
+
+    @Override
+    public boolean isReopenable() {
+        return !link;
+    }
+
+    @Override
+    public String closing() {
+        if (closing == null) {
+            closing = join(code ? "`" : pre ? CLOSING_FENCE : underscore ? "_" : "", markers.iterator());
+            if (underscore) {
+                // The _ ending the text, only there to separate the markers from it
+                closing = closing.substring(1);
+            }
+        }
+        return closing;
+    }
+
+    @Override
+    public int closingLength() {
+        return closing().length();
+    }
+
+    @Override
+    public String opening() {
+        final String opening = join("", markers.descendingIterator());
+        if (code || pre) {
+            return opening + (code ? "`" : OPENING_FENCE);
+        }
+        // The text may go on with another marker
+        return opening.endsWith("_") ? opening + "**" : opening;
+    }
+
+    /**
+     * Markers one after another, after the start; an empty bold entity separates _ and __,
+     * which Telegram would read as ___
+     */
+    private static String join(String start, Iterator<String> markers) {
+        final StringBuilder result = new StringBuilder(start);
+        while (markers.hasNext()) {
+            final String marker = markers.next();
+            if (result.length() > 0 && result.charAt(result.length() - 1) == '_' && marker.charAt(0) == '_') {
+                result.append("**");
+            }
+            result.append(marker);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public FormattingState copy() {
+        return new MarkdownV2State(this);
+    }
+}
@@ -0,0 +1,209 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cuts a text too long for a single Telegram message or caption into parts, one part at a time.
+ * <p>
+ * A part ends at a line break if possible, else at a space, outside of any entity of the parse mode
+ * the text is sent with. It never ends inside an HTML tag or entity, an escaped MarkdownV2 character
+ * or between the two halves of a surrogate pair (emoji). An entity too long for one part, like a ```pre```
+ * block or an HTML {@code <b>} element, is closed at the end of the part and opened again at the start
+ * of the next one, so every part can still be parsed in the mode.
+ */
+public class MessageSplitter implements Iterator<String> {
+    public static final int MESSAGE_LIMIT = 4096;
+    public static final int CAPTION_LIMIT = 1024;
+
+    private final String text;
+    private final int limit;
+    private final FormattingState initial;
+    private int position;
+
+    /**
+     * The entities open at the position, opened again at the start of the next part
+     */
+    private FormattingState state;
+
+    /**
+     * A splitter for (legacy) Markdown
+     */
+    public MessageSplitter(String text, int limit) {
+        this(text, limit, ParseMode.MARKDOWN);
+    }
+
+    public MessageSplitter(String text, int limit, ParseMode parseMode) {
+        this.text = text != null ? text : "";
+        this.limit = limit;
+        this.initial = FormattingState.of(parseMode);
+        this.state = initial.copy();
+        skipBlank();
+    }
+
+    /**
+     * Split the (legacy) Markdown text into parts no longer than the limit
+     */
+    public static List<String> split(String text, int limit) {
+        return split(text, limit, ParseMode.MARKDOWN);
+    }
+
+    /**
+     * Split the text into parts no longer than the limit, each of them valid in the parse mode
+     * if the text is
+     */
+    public static List<String> split(String text, int limit, ParseMode parseMode) {
+        if (text == null || text.length() <= limit) {
+            return Collections.singletonList(text);
+        }
+
+        final List<String> parts = new ArrayList<>();
+        new MessageSplitter(text, limit, parseMode).forEachRemaining(parts::add);
+        return parts;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < text.length();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final String prefix = state.opening();
+        final int budget = limit - prefix.length();
+
+        if (text.length() - position <= budget) {
+            final String part = prefix + text.substring(position);
+            position = text.length();
+            state = initial.copy();
+            return part;
+        }
+
+        // Cut positions: the part is text[position, cut), followed by the closing of the entities open there
+        final int end = position + budget;
+        int lineBreak = -1;
+        int space = -1;
+        int outside = -1;
+        int closedLineBreak = -1;
+        int closedSpace = -1;
+        int closed = -1;
+        int boundary = -1;
+
+        final FormattingState scan = state.copy();
+        // Telegram rejects a part with nothing to show, e.g. only an opened and closed tag
+        boolean content = false;
+        for (int i = position; i < text.length(); ) {
+            final int token = i;
+            i = scan.advance(text, token);
+            content |= isContent(scan, token);
+            if (i > end || i >= text.length()) {
+                break;
+            }
+            if (isInsideSurrogatePair(i)) {
+                continue;
+            }
+
+            boundary = i;
+            if (!content) {
+                continue;
+            }
+
+            final char c = text.charAt(i);
+            if (scan.isOutside()) {
+                outside = i;
+                if (c == '\n') {
+                    lineBreak = i;
+                } else if (c == ' ') {
+                    space = i;
+                }
+            } else if (scan.isReopenable() && i + scan.closingLength() <= end) {
+                closed = i;
+                if (c == '\n') {
+                    closedLineBreak = i;
+                } else if (c == ' ') {
+                    closedSpace = i;
+                }
+            }
+        }
+
+        // Every candidate lies after the start of the part, so no part is empty
+        final int cut;
+        final boolean skipSeparator;
+        boolean reopen = true;
+        if (lineBreak > position) {
+            cut = lineBreak;
+            skipSeparator = true;
+        } else if (space > position) {
+            cut = space;
+            skipSeparator = true;
+        } else if (closedLineBreak > position) {
+            cut = closedLineBreak;
+            skipSeparator = true;
+        } else if (closedSpace > position) {
+            // Kept, it may be part of a pre block
+            cut = closedSpace;
+            skipSeparator = false;
+        } else if (outside > position) {
+            cut = outside;
+            skipSeparator = false;
+        } else if (closed > position) {
+            cut = closed;
+            skipSeparator = false;
+        } else {
+            // A single entity longer than the limit which can't be closed, it can't be kept intact
+            cut = boundary > position ? boundary : end - (isInsideSurrogatePair(end) ? 1 : 0);
+            skipSeparator = false;
+            reopen = false;
+        }
+
+        final FormattingState atCut = state.copy();
+        for (int i = position; i < cut; ) {
+            i = atCut.advance(text, i);
+        }
+
+        final String part = prefix + text.substring(position, cut) + (reopen ? atCut.closing() : "");
+        position = skipSeparator ? cut + 1 : cut;
+        state = reopen ? atCut : initial.copy();
+        skipBlank();
+        return part;
+    }
+
+    /**
+     * Skip the line breaks and spaces a part would start with outside of any entity:
+     * Telegram drops them anyway, and rejects a message made of nothing else.
+     * The rest of the text is skipped if it has nothing to show, like the closing tags of the entities
+     * the last part closed already.
+     */
+    private void skipBlank() {
+        while (state.isOutside() && position < text.length()
+                && (text.charAt(position) == '\n' || text.charAt(position) == ' ')) {
+            position++;
+        }
+
+        final FormattingState scan = state.copy();
+        for (int i = position; i < text.length(); ) {
+            final int token = i;
+            i = scan.advance(text, token);
+            if (isContent(scan, token)) {
+                return;
+            }
+        }
+        position = text.length();
+    }
+
+    private boolean isContent(FormattingState scan, int token) {
+        return !scan.isMarkup() && !Character.isWhitespace(text.charAt(token));
+    }
+
+    private boolean isInsideSurrogatePair(int i) {
+        return i > 0 && i < text.length()
+                && Character.isLowSurrogate(text.charAt(i)) && Character.isHighSurrogate(text.charAt(i - 1));
+    }
+}
@@ -0,0 +1,152 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A message as configured in a build step, compiled into literal text and token macro references.
+ * <p>
+ * Emoji placeholders of the literal text are replaced when compiling, so rendering only evaluates the macros.
+ * Compiled templates are cached by their text, in a bounded cache which doesn't keep the texts alive.
+ */
+public final class MessageTemplate {
+    private static final int MAX_CACHED = 1000;
+
+    private static final Map<String, MessageTemplate> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * literals[i] comes before macros[i], the last literal after the last macro
+     */
+    private final String[] literals;
+    private final String[] macros;
+    private final int literalLength;
+
+    /**
+     * Evaluates a single macro reference, e.g. {@code ${BUILD_NUMBER}}
+     */
+    public interface Expander {
+        String expand(String macro) throws IOException, InterruptedException;
+    }
+
+    private MessageTemplate(List<String> literals, List<String> macros) {
+        this.literals = literals.toArray(new String[0]);
+        this.macros = macros.toArray(new String[0]);
+
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * The compiled template of the text, from the cache if it was compiled before
+     */
+    public static MessageTemplate of(String text) {
+        MessageTemplate template = CACHE.get(text);
+        if (template == null) {
+            template = compile(text);
+            synchronized (CACHE) {
+                if (CACHE.size() >= MAX_CACHED) {
+                    CACHE.clear();
+                }
+                CACHE.put(text, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Forget the compiled templates, e.g. after the emoji placeholders changed
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    static MessageTemplate compile(String text) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> macros = new ArrayList<>();
+
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            final int end = macroEnd(text, i);
+            if (end < 0) {
+                literal.append(text.charAt(i++));
+                continue;
+            }
+
+            literals.add(EmojiUtils.replaceEmojiPlaceholders(literal.toString()));
+            literal.setLength(0);
+            macros.add(text.substring(i, end));
+            i = end;
+        }
+        literals.add(EmojiUtils.replaceEmojiPlaceholders(literal.toString()));
+
+        return new MessageTemplate(literals, macros);
+    }
+
+    /**
+     * End of the macro reference starting at the index: {@code ${NAME}}, {@code ${NAME, arg="value"}}
+     * or {@code $NAME}, including any escaping dollars before it. -1 if no reference starts there.
+     */
+    private static int macroEnd(String text, int start) {
+        if (text.charAt(start) != '$') {
+            return -1;
+        }
+
+        int i = start;
+        while (i < text.length() && text.charAt(i) == '$') {
+            i++;
+        }
+        final boolean escaped = i - start > 1;
+
+        if (i < text.length() && text.charAt(i) == '{') {
+            boolean quoted = false;
+            for (i++; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == '}' && !quoted) {
+                    return i + 1;
+                }
+            }
+            // Unclosed, left to the token macro plugin to make sense of
+            return text.length();
+        }
+
+        if (i < text.length() && (Character.isLetter(text.charAt(i)) || text.charAt(i) == '_')) {
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                i++;
+            }
+            return i;
+        }
+
+        return escaped ? i : -1;
+    }
+
+    /**
+     * Whether the template has no macros, i.e. renders to the same text every time
+     */
+    public boolean isConstant() {
+        return macros.length == 0;
+    }
+
+    public String render(Expander expander) throws IOException, InterruptedException {
+        if (macros.length == 0) {
+            return literals[0];
+        }
+
+        final StringBuilder result = new StringBuilder(literalLength + 16 * macros.length);
+        for (int i = 0; i < macros.length; i++) {
+            result.append(literals[i]).append(expander.expand(macros[i]));
+        }
+        return result.append(literals[macros.length]).toString();
+    }
+}
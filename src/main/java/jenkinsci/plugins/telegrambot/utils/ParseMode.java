@@ -0,0 +1,174 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+/**
+ * How Telegram formats the text of a message or caption.
+ * <p>
+ * Template text is trusted to be formatted for the mode, while macro values are escaped
+ * for MarkdownV2 and HTML, so a branch name or commit message can't break the formatting.
+ * Legacy Markdown keeps macro values as they are, the way they were always sent.
+ */
+public enum ParseMode {
+    MARKDOWN("Markdown", "_*`[", false),
+    MARKDOWN_V2("MarkdownV2", "_*[]()~`>#+-=|{}.!\\", true),
+    HTML("HTML", "<>&", true),
+    PLAIN(null, "", false);
+
+    private final String telegramName;
+    private final boolean[] special = new boolean[128];
+    private final boolean escapingMacroValues;
+
+    ParseMode(String telegramName, String specialChars, boolean escapingMacroValues) {
+        this.telegramName = telegramName;
+        this.escapingMacroValues = escapingMacroValues;
+        for (int i = 0; i < specialChars.length(); i++) {
+            special[specialChars.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * The parse_mode of the Bot API, null for plain text
+     */
+    public String getTelegramName() {
+        return telegramName;
+    }
+
+    public boolean isEscapingMacroValues() {
+        return escapingMacroValues;
+    }
+
+    /**
+     * Escape the text so Telegram shows it as it is
+     *
+     * @return the text itself if nothing needs escaping
+     */
+    public String escape(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int i = 0;
+        while (i < text.length() && !isSpecial(text.charAt(i))) {
+            i++;
+        }
+        if (i == text.length()) {
+            return text;
+        }
+
+        final StringBuilder result = new StringBuilder(text.length() + 16).append(text, 0, i);
+        for (; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (!isSpecial(c)) {
+                result.append(c);
+            } else if (this == HTML) {
+                result.append(c == '<' ? "&lt;" : c == '>' ? "&gt;" : "&amp;");
+            } else {
+                result.append('\\').append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * The text as a preformatted block, shown as it is in a monospace font
+     */
+    public String preformatted(String text) {
+        return openPreformatted() + escapePreformatted(text) + closePreformatted();
+    }
+
+    /**
+     * The text as a preformatted block of at most the given length, for a block sent as a message of its own.
+     * The first lines are dropped until the rest fits, and a line too long for the block keeps only its end.
+     */
+    public String preformatted(String text, int maxLength) {
+        final String block = preformatted(text);
+        if (block.length() <= maxLength) {
+            return block;
+        }
+
+        final String dropped = "...";
+        final int room = maxLength - openPreformatted().length() - closePreformatted().length() - dropped.length() - 1;
+        final String[] lines = text.split("\n", -1);
+        final StringBuilder kept = new StringBuilder();
+        for (int i = lines.length - 1; i >= 0; i--) {
+            final String line = escapePreformatted(lines[i]);
+            if (kept.length() + line.length() + 1 > room) {
+                if (kept.length() == 0) {
+                    // Escaping makes a character at most 5 long, like &amp;
+                    int start = Math.max(0, lines[i].length() - room / 5);
+                    if (start > 0 && Character.isLowSurrogate(lines[i].charAt(start))) {
+                        start++;
+                    }
+                    kept.append(escapePreformatted(lines[i].substring(start)));
+                }
+                break;
+            }
+            kept.insert(0, kept.length() > 0 ? line + "\n" : line);
+        }
+        return openPreformatted() + dropped + "\n" + kept + closePreformatted();
+    }
+
+    private String openPreformatted() {
+        switch (this) {
+            case MARKDOWN:
+            case MARKDOWN_V2:
+                return "```\n";
+            case HTML:
+                return "<pre>";
+            default:
+                return "";
+        }
+    }
+
+    private String closePreformatted() {
+        switch (this) {
+            case MARKDOWN:
+            case MARKDOWN_V2:
+                return "\n```";
+            case HTML:
+                return "</pre>";
+            default:
+                return "";
+        }
+    }
+
+    private String escapePreformatted(String text) {
+        switch (this) {
+            case MARKDOWN:
+                // Legacy Markdown can't escape inside a block, only keep the text from closing it
+                return text.replace("```", "'''");
+            case MARKDOWN_V2:
+                return text.replace("\\", "\\\\").replace("`", "\\`");
+            case HTML:
+                return escape(text);
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * Whether Telegram can parse the text in this mode; a text it can't parse would be rejected
+     */
+    public boolean isValid(String text) {
+        switch (this) {
+            case MARKDOWN:
+                return MarkdownUtils.isBalanced(text);
+            case MARKDOWN_V2:
+                return MarkdownUtils.isValidMarkdownV2(text);
+            case HTML:
+                return HtmlUtils.isValid(text);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * This mode if Telegram can parse the text in it, else plain text, so the message isn't lost
+     */
+    public ParseMode forText(String text) {
+        return isValid(text) ? this : PLAIN;
+    }
+
+    private boolean isSpecial(char c) {
+        return c < special.length && special[c];
+    }
+}
@@ -0,0 +1,108 @@
+package jenkinsci.plugins.telegrambot.telegram.delivery;
+
+import jenkinsci.plugins.telegrambot.utils.ParseMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * What {@link DeliveryJournal} replays after a restart: every pending message, once, with its parse mode,
+ * also when the journal was compacted and the process ended without closing it
+ */
+public class DeliveryJournalTest {
+    private static final String LARGE_TEXT = "x".repeat(1024 * 1024);
+    private static final String END = "end";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pendingMessagesAreReplayedAfterCompaction() throws Exception {
+        final File directory = folder.newFolder();
+        final DeliveryJournal journal = new DeliveryJournal(directory);
+        try {
+            final OutboundMessage first = new OutboundMessage(1L, "first", ParseMode.HTML);
+            journal.append(first);
+
+            // Large sent messages roll the segments, while the first one keeps the oldest segment alive
+            for (int i = 0; i < 20; i++) {
+                final OutboundMessage sent = new OutboundMessage(2L, LARGE_TEXT);
+                journal.append(sent);
+                sent.getResult().complete(DeliveryResult.SENT);
+            }
+            final OutboundMessage last = new OutboundMessage(3L, "last");
+            journal.append(last);
+
+            journal.maintain();
+            assertEquals("Segments after compaction", 1, segmentCount(directory));
+
+            // A restart without closing the journal, as after a crash
+            final Map<String, ParseMode> replayed = replay(new DeliveryJournal(directory));
+            assertEquals("Replayed messages", Map.of("first", ParseMode.HTML, "last", ParseMode.MARKDOWN), replayed);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void finishedMessagesAreNotReplayed() throws Exception {
+        final File directory = folder.newFolder();
+        final DeliveryJournal journal = new DeliveryJournal(directory);
+        final List<OutboundMessage> messages = new ArrayList<>();
+        for (long chatId = 1; chatId <= 4; chatId++) {
+            final OutboundMessage message = new OutboundMessage(chatId, "message " + chatId);
+            journal.append(message);
+            messages.add(message);
+        }
+        messages.get(0).getResult().complete(DeliveryResult.SENT);
+        messages.get(2).getResult().complete(DeliveryResult.FAILED);
+        journal.close();
+
+        final Map<String, ParseMode> replayed = replay(new DeliveryJournal(directory));
+        assertEquals("Replayed messages", Map.of("message 2", ParseMode.MARKDOWN, "message 4", ParseMode.MARKDOWN),
+                replayed);
+
+        // Sent by the replay, so the next start has nothing left
+        assertEquals("Replayed by the next start", Map.of(), replay(new DeliveryJournal(directory)));
+    }
+
+    /**
+     * Replay the journal into a queue and wait for the replayed messages to be sent
+     *
+     * @return parse mode of the sent messages by text
+     */
+    private static Map<String, ParseMode> replay(DeliveryJournal journal) throws Exception {
+        final Map<String, ParseMode> sent = new ConcurrentHashMap<>();
+        final DeliveryQueue queue = new DeliveryQueue(message -> sent.put(message.getText(), message.getParseMode()),
+                10, 1, OverflowPolicy.BLOCK);
+
+        try {
+            journal.replay(queue);
+
+            // One worker serves the messages in order, so the replayed ones are finished,
+            // and acknowledged in the journal, once this one is
+            final OutboundMessage end = new OutboundMessage(0L, END);
+            queue.enqueue(end, false);
+            assertEquals("Result of the end marker", DeliveryResult.SENT, end.getResult().get(10, TimeUnit.SECONDS));
+        } finally {
+            journal.close();
+        }
+
+        sent.remove(END);
+        return sent;
+    }
+
+    private static int segmentCount(File directory) {
+        final String[] names = directory.list((dir, name) -> name.startsWith("segment-"));
+        return names != null ? names.length : 0;
+    }
+}
@@ -0,0 +1,85 @@
+package jenkinsci.plugins.telegrambot.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link EmojiMatcher} has to replace exactly like the loop of {@link String#replace} calls it replaced,
+ * also where placeholders overlap or chain by sharing a colon
+ */
+public class EmojiMatcherTest {
+
+    @Test
+    public void randomTextsAreReplacedLikeBefore() {
+        final Map<String, String> placeholders = EmojiUtils.getBuiltInPlaceholders();
+        final List<String> names = new ArrayList<>(placeholders.keySet());
+        final String[] fragments = {":", "::", " ", "\n", "test", "bug", ":te", "st:", "a:b", "success"};
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            final StringBuilder builder = new StringBuilder();
+            for (int parts = random.nextInt(8); parts > 0; parts--) {
+                if (random.nextBoolean()) {
+                    final String placeholder = names.get(random.nextInt(names.size()));
+                    // Sometimes without the closing colon, so it may chain with the next one
+                    builder.append(random.nextInt(3) == 0 ? placeholder.substring(0, placeholder.length() - 1) : placeholder);
+                } else {
+                    builder.append(fragments[random.nextInt(fragments.length)]);
+                }
+            }
+
+            final String text = builder.toString();
+            assertEquals("Replacement of \"" + text + "\"", legacyReplace(placeholders, text),
+                    EmojiUtils.replaceEmojiPlaceholders(text));
+        }
+    }
+
+    @Test
+    public void overlappingPlaceholdersAreReplacedLikeBefore() {
+        final Map<String, String> placeholders = EmojiUtils.getBuiltInPlaceholders();
+        for (String text : new String[]{":test:bug:", ":bug:test:", ":test:test:test:", ":success:failure:",
+                "::success::", ":success::failure:", ":log:rocket:gear:", "a:test:b:bug:c"}) {
+            assertEquals("Replacement of \"" + text + "\"", legacyReplace(placeholders, text),
+                    EmojiUtils.replaceEmojiPlaceholders(text));
+        }
+    }
+
+    @Test
+    public void chainedCustomPlaceholdersAreReplacedLikeBefore() {
+        final Map<String, String> placeholders = new HashMap<>();
+        placeholders.put(":a:", "1");
+        placeholders.put(":b:", "2");
+        placeholders.put(":ab:", "3");
+        placeholders.put(":ba:", "4");
+        final EmojiMatcher matcher = EmojiMatcher.compile(placeholders);
+
+        for (String text : new String[]{":a:b:", ":a:b:a:", ":b:a:b:", ":ab:a:", "::a::b::", ":a:ab:b:", ":ab:ba:ab:"}) {
+            assertEquals("Replacement of \"" + text + "\"", legacyReplace(placeholders, text), matcher.replace(text));
+        }
+    }
+
+    @Test
+    public void textWithoutPlaceholdersIsReturnedAsIs() {
+        final String text = "Build #42 of my-job finished: no placeholders here";
+        assertSame(text, EmojiUtils.replaceEmojiPlaceholders(text));
+    }
+
+    /**
+     * The replacement as it was before {@link EmojiMatcher}, one placeholder after another
+     */
+    private static String legacyReplace(Map<String, String> placeholders, String text) {
+        String result = text;
+        for (Map.Entry<String, String> entry : placeholders.entrySet()) {
+            result = result.replace(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+}